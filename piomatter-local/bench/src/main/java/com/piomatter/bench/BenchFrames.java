@@ -0,0 +1,47 @@
+package com.piomatter.bench;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+/**
+ * Shared fixtures: back buffers configured like the client, and a mock
+ * RGB888 framebuffer so no JNI library is needed.
+ */
+final class BenchFrames {
+
+    static final int PANEL = 64;
+
+    private BenchFrames() {}
+
+    /** Direct buffer with the same layout as {@code PioMatter.FB.data}. */
+    static ByteBuffer mockFramebuffer(int w, int h) {
+        return ByteBuffer.allocateDirect(w * h * 3);
+    }
+
+    /** TYPE_INT_RGB back buffer with the LED-matrix friendly hints used by the client. */
+    static BufferedImage backBuffer(int w, int h) {
+        return new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+    }
+
+    static Graphics2D graphics(BufferedImage back) {
+        Graphics2D g = back.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        return g;
+    }
+
+    /** Non-trivial content so the copy is not measuring a constant image. */
+    static BufferedImage gradient(int w, int h) {
+        BufferedImage img = backBuffer(w, h);
+        Graphics2D g = img.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.RED, w, h, Color.CYAN));
+        g.fillRect(0, 0, w, h);
+        g.dispose();
+        return img;
+    }
+}
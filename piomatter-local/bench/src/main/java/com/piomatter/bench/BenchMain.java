@@ -0,0 +1,26 @@
+package com.piomatter.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of {@code benchmarks.jar}: same arguments as the JMH launcher,
+ * but the GC profiler is always enabled so every run reports ns/op and
+ * allocation rate ({@code gc.alloc.rate.norm} = bytes per frame stage).
+ *
+ *   java -jar target/benchmarks.jar                 # everything
+ *   java -jar target/benchmarks.jar CopyRGB888      # one benchmark (regex)
+ */
+public class BenchMain {
+
+    public static void main(String[] args) throws Exception {
+        Options opts = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opts).run();
+    }
+}
@@ -0,0 +1,46 @@
+package com.piomatter.bench;
+
+import com.piomatter.PioMatter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/** {@link PioMatter#copyBufferedImageToRGB888} on single and chained panel sizes. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CopyRGB888Benchmark {
+
+    @Param({"255", "200", "64"})
+    int brightness;
+
+    /** Panel canvas: one 64x64, 2x2 chain, 4x1 chain. */
+    @Param({"64x64", "128x128", "256x64"})
+    String canvas;
+
+    int width, height, stride;
+    BufferedImage back;
+    ByteBuffer fb;
+
+    @Setup
+    public void setup() {
+        String[] wh = canvas.split("x");
+        width = Integer.parseInt(wh[0]);
+        height = Integer.parseInt(wh[1]);
+        stride = width * 3;
+        back = BenchFrames.gradient(width, height);
+        fb = BenchFrames.mockFramebuffer(width, height);
+    }
+
+    @Benchmark
+    public ByteBuffer copy() {
+        PioMatter.copyBufferedImageToRGB888(back, fb, stride, width, height, brightness);
+        return fb;
+    }
+}
@@ -0,0 +1,46 @@
+package com.piomatter.bench;
+
+import com.piomatter.UtilsImage;
+import com.piomatter.UtilsImage.FitMode;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/** {@link UtilsImage#drawImageFit} of the bundled logo into a 64x64 back buffer, every {@link FitMode}. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DrawImageFitBenchmark {
+
+    @Param({"COVER", "CONTAIN", "STRETCH", "CENTER", "TILE", "NONE"})
+    FitMode mode;
+
+    BufferedImage back;
+    Graphics2D g;
+    BufferedImage src;
+
+    @Setup
+    public void setup() {
+        back = BenchFrames.backBuffer(BenchFrames.PANEL, BenchFrames.PANEL);
+        g = BenchFrames.graphics(back);
+        src = UtilsImage.loadImage("ietilogo.png");
+        if (src == null) src = BenchFrames.gradient(200, 120);
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage drawFit() {
+        UtilsImage.drawImageFit(g, src, 0, 0, BenchFrames.PANEL, BenchFrames.PANEL, mode);
+        return back;
+    }
+}
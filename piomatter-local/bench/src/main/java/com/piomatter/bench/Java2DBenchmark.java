@@ -0,0 +1,84 @@
+package com.piomatter.bench;
+
+import com.piomatter.GlyphAtlas;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw Java2D primitives the render loop uses on a 64x64 TYPE_INT_RGB back buffer,
+ * and their {@link GlyphAtlas} / {@code int[]} counterparts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class Java2DBenchmark {
+
+    BufferedImage back;
+    Graphics2D g;
+    Font font;
+    GlyphAtlas atlas;
+    int[] pixels;
+
+    @Setup
+    public void setup() {
+        back = BenchFrames.backBuffer(BenchFrames.PANEL, BenchFrames.PANEL);
+        g = BenchFrames.graphics(back);
+        font = new Font("SansSerif", Font.PLAIN, 12);
+        g.setFont(font);
+        atlas = GlyphAtlas.of(font);
+        pixels = ((DataBufferInt) back.getRaster().getDataBuffer()).getData();
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage fillRect() {
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, BenchFrames.PANEL, BenchFrames.PANEL);
+        return back;
+    }
+
+    @Benchmark
+    public BufferedImage drawString() {
+        g.setColor(Color.WHITE);
+        g.drawString("Hola món", 5, 26);
+        return back;
+    }
+
+    /** Background clear + one text line, as a typical text frame. */
+    @Benchmark
+    public BufferedImage clearAndText() {
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, BenchFrames.PANEL, BenchFrames.PANEL);
+        g.setColor(Color.WHITE);
+        g.drawString("Hola món", 5, 26);
+        return back;
+    }
+
+    @Benchmark
+    public int[] atlasDrawString() {
+        atlas.drawString(pixels, BenchFrames.PANEL, BenchFrames.PANEL, "Hola món", 5, 26, 0xFFFFFF);
+        return pixels;
+    }
+
+    /** Same frame as {@link #clearAndText()} without Java2D. */
+    @Benchmark
+    public int[] atlasClearAndText() {
+        Arrays.fill(pixels, 0);
+        atlas.drawString(pixels, BenchFrames.PANEL, BenchFrames.PANEL, "Hola món", 5, 26, 0xFFFFFF);
+        return pixels;
+    }
+}
@@ -0,0 +1,60 @@
+package com.project.client;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.piomatter.GlyphAtlas;
+
+import java.awt.Font;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client text layout ({@link TextLayout}), measured with the same font and text area
+ * as the render loop: uncached layout, cache hit and single-line truncation.
+ * Lives in the client package to reach the package-private helpers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TextLayoutBenchmark {
+
+    // Àrea de text del client (64x64, TEXT_X = 5, franja superior de 14px)
+    static final int AVAIL_W = 64 - 5;
+    static final int AVAIL_H = 64 - 14;
+
+    @Param({"short", "paragraph", "pasted"})
+    String text;
+
+    String message;
+    GlyphAtlas fm;
+    TextLayout.Cache cache;
+
+    @Setup
+    public void setup() {
+        fm = GlyphAtlas.of(new Font("SansSerif", Font.PLAIN, 12));
+        cache = new TextLayout.Cache(32);
+        message = switch (text) {
+            case "short" -> "Hola món!";
+            case "paragraph" -> "Benvinguts a l'IETI: avui la sessió comença a les nou en punt a l'aula 3";
+            default -> "Lorem ipsum dolor sit amet consectetur adipiscing elit ".repeat(60);
+        };
+    }
+
+    @Benchmark
+    public TextLayout wrapText() {
+        return TextLayout.compute(message, fm, AVAIL_W, AVAIL_H);
+    }
+
+    /** What the render loop pays per frame while the same message is shown. */
+    @Benchmark
+    public TextLayout cachedLayout() {
+        return cache.get(message, fm, AVAIL_W, AVAIL_H);
+    }
+
+    @Benchmark
+    public String truncateWithEllipsis() {
+        return TextLayout.truncateWithEllipsis(message, fm, AVAIL_W);
+    }
+}
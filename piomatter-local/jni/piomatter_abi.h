@@ -8,21 +8,45 @@ extern "C" {
 // Opaque handle del dispositiu
 typedef struct pm_device pm_device;
 
+// Rotació del llenç virtual respecte als panells (sentit horari)
+enum { PM_ROTATE_0 = 0, PM_ROTATE_90 = 90, PM_ROTATE_180 = 180, PM_ROTATE_270 = 270 };
+
 // Config bàsica de la matriu
+//
+// Panells encadenats: panels_across x panels_down panells de panel_width x panel_height
+// formen un sol llenç virtual. La cadena comença al panell de dalt a l'esquerra i recorre
+// cada fila d'esquerra a dreta; amb serpentine, les files senars van de dreta a esquerra
+// amb els panells girats 180° (el cable fa ziga-zaga). El llenç es pot girar i emmirallar.
+// width/height són la mida del llenç (ja girat) i del framebuffer.
+// Amb panels_across = 0 és un sol panell de width x height (config antiga).
 typedef struct {
-  int width;            // p.ex. 64
-  int height;           // p.ex. 64
+  int width;            // amplada del llenç, p.ex. 64
+  int height;           // alçada del llenç, p.ex. 64
   int n_addr_lines;     // p.ex. 5 (A..E)
   int lanes;            // 1 o 2
   int brightness_0_255; // 0..255
   int fps_cap;          // 0 = sense límit
+
+  int panel_width;      // amplada d'un panell, p.ex. 64
+  int panel_height;     // alçada d'un panell, p.ex. 64
+  int panels_across;    // panells per fila (0 = un sol panell de width x height)
+  int panels_down;      // files de panells
+  int serpentine;       // 1 = files alternes girades (cablejat en ziga-zaga)
+  int rotation;         // PM_ROTATE_* (graus, sentit horari)
+  int mirror_x;         // 1 = emmiralla el llenç horitzontalment
+  int mirror_y;         // 1 = emmiralla el llenç verticalment
+
+  int gamma_x100;       // corba de to extra x100 (0 o 100 = lineal, 220 = gamma 2.2)
 } pm_config;
 
 // ── API ───────────────────────────────────────────────────────────────────────
 pm_device* pm_open(const pm_config* cfg);
 void       pm_close(pm_device* dev);
 
+// Brillantor i gamma s'apliquen a cada swap amb una taula de 256 entrades: canviar-les
+// només refà la taula (O(1) respecte a la mida del panell) i es veu al swap següent.
 int        pm_set_brightness(pm_device* dev, int value_0_255);
+int        pm_set_gamma(pm_device* dev, int gamma_x100);
 int        pm_swap_buffers(pm_device* dev);
 
 uint8_t*   pm_map_framebuffer(pm_device* dev,
@@ -7,6 +7,7 @@
 #include <vector>
 
 #include <algorithm>  // per std::max
+#include <mutex>
 extern "C" {
   #include <math.h>   // posa ::pow i ::round a l’espai global
 }
@@ -41,6 +42,102 @@ static std::vector<int> build_interleave_columns_map(int W, int H, int LANES) {
     return map;
 }
 
+// Completa i valida la geometria de panells encadenats (vegeu pm_config).
+// Retorna false si la config no és coherent.
+static bool normalize_layout(pm_config& c) {
+    if (c.panels_across <= 0) {
+        // Config antiga: un sol panell de width x height
+        c.panel_width   = c.width;
+        c.panel_height  = c.height;
+        c.panels_across = 1;
+        c.panels_down   = 1;
+        c.serpentine    = 0;
+        c.rotation      = PM_ROTATE_0;
+        c.mirror_x      = 0;
+        c.mirror_y      = 0;
+    }
+    if (c.panel_width <= 0 || c.panel_height <= 0 || c.panels_down <= 0) return false;
+    if (c.rotation != PM_ROTATE_0 && c.rotation != PM_ROTATE_90
+        && c.rotation != PM_ROTATE_180 && c.rotation != PM_ROTATE_270) return false;
+    if (c.lanes <= 0 || c.panel_width % c.lanes != 0) return false;
+
+    int wall_w = c.panel_width * c.panels_across;
+    int wall_h = c.panel_height * c.panels_down;
+    bool swap_wh = (c.rotation == PM_ROTATE_90 || c.rotation == PM_ROTATE_270);
+    int canvas_w = swap_wh ? wall_h : wall_w;
+    int canvas_h = swap_wh ? wall_w : wall_h;
+    if (c.width == 0 && c.height == 0) {
+        c.width  = canvas_w;
+        c.height = canvas_h;
+    }
+    return c.width == canvas_w && c.height == canvas_h;
+}
+
+// Mapping del llenç virtual (width x height, índex y * width + x) a la posició física.
+// Es calcula un sol cop a pm_open:
+//   llenç → (mirall, rotació) → mur de panells → ordre de la cadena (serpentine)
+//   → tira única de panells (panel_height d'alt) → interleave de lanes.
+static std::vector<int> build_chain_map(const pm_config& c) {
+    const int pw = c.panel_width, ph = c.panel_height;
+    const int across = c.panels_across;
+    const int wall_w = pw * across, wall_h = ph * c.panels_down;
+    const int strip_w = pw * across * c.panels_down; // tots els panells en fila, com viatgen les dades
+
+    auto strip = build_interleave_columns_map(strip_w, ph, c.lanes);
+
+    std::vector<int> map;
+    map.resize((size_t)c.width * (size_t)c.height);
+    for (int cy = 0; cy < c.height; ++cy) {
+        for (int cx = 0; cx < c.width; ++cx) {
+            // Mirall (sobre el llenç) i rotació: coordenades al mur de panells
+            int x = c.mirror_x ? c.width  - 1 - cx : cx;
+            int y = c.mirror_y ? c.height - 1 - cy : cy;
+            int wx, wy;
+            switch (c.rotation) {
+                case PM_ROTATE_90:  wx = wall_w - 1 - y; wy = x;              break;
+                case PM_ROTATE_180: wx = wall_w - 1 - x; wy = wall_h - 1 - y; break;
+                case PM_ROTATE_270: wx = y;              wy = wall_h - 1 - x; break;
+                default:            wx = x;              wy = y;              break;
+            }
+
+            // Panell i posició dins del panell
+            int px = wx / pw, py = wy / ph;
+            int ux = wx % pw, uy = wy % ph;
+            int chain_index;
+            if (c.serpentine && (py & 1)) {
+                // Fila de tornada: ordre invers i panells girats 180°
+                chain_index = py * across + (across - 1 - px);
+                ux = pw - 1 - ux;
+                uy = ph - 1 - uy;
+            } else {
+                chain_index = py * across + px;
+            }
+
+            int sx = chain_index * pw + ux;
+            map[(size_t)cy * c.width + cx] = strip[(size_t)uy * strip_w + sx];
+        }
+    }
+    return map;
+}
+
+// Taula de to: lut[v] = 255 * (v/255)^gamma * brillantor/255.
+// Amb gamma 1.0 és exactament (v * b) / 255, com UtilsRGB888.brightnessLut al Java.
+// Retorna true si la taula és la identitat (no cal aplicar-la).
+static bool build_tone_lut(uint8_t lut[256], int brightness, int gamma_x100) {
+    const int b = std::clamp(brightness, 0, 255);
+    const bool linear = (gamma_x100 <= 0 || gamma_x100 == 100);
+    const double g = linear ? 1.0 : gamma_x100 / 100.0;
+    for (int v = 0; v < 256; ++v) {
+        if (linear) {
+            lut[v] = (uint8_t)((v * b) / 255);
+        } else {
+            double x = ::pow(v / 255.0, g) * b;
+            lut[v] = (uint8_t)std::clamp((int)::round(x), 0, 255);
+        }
+    }
+    return b == 255 && linear;
+}
+
 // ─────────────────────────────────────────────────────────────────────────────
 // Opaque device que manté el core PioMatter + framebuffer Java (RGB888 packed)
 // ─────────────────────────────────────────────────────────────────────────────
@@ -53,6 +150,15 @@ struct pm_device {
     // Framebuffer que exposarem a Java via ByteBuffer directe
     std::vector<uint8_t> fb; // H * W * 3
 
+    // Còpia amb brillantor i gamma aplicades: és el que llegeix colorspace_rgb888_packed.
+    // La taula només es toca amb lut_mu: set_brightness/set_gamma la refan i cada swap en
+    // copia una instantània (256 bytes) abans d'aplicar-la, de manera que un swap concurrent
+    // mai veu una taula a mig fer ni una taula i un indicador d'identitat de configs diferents.
+    std::vector<uint8_t> out; // H * W * 3
+    uint8_t lut[256]{};
+    bool lut_identity = false;
+    std::mutex lut_mu;
+
     // Geometry i motor PioMatter (pinout Active3, colors RGB888 packed)
     std::unique_ptr<piomatter::matrix_geometry> geom;
     std::unique_ptr<piomatter::piomatter<piomatter::active3_pinout,
@@ -71,19 +177,29 @@ pm_device* pm_open(const pm_config* cfg_in) {
 
     auto d = new pm_device();
     d->cfg    = *cfg_in;
+    if (!normalize_layout(d->cfg)) {
+        delete d;
+        return nullptr;
+    }
     d->stride = d->cfg.width * 3;
     d->fb.resize((size_t)d->cfg.height * (size_t)d->stride, 0);
+    d->out.resize(d->fb.size(), 0);
+    d->cfg.brightness_0_255 = std::clamp(d->cfg.brightness_0_255, 0, 255);
+    d->lut_identity = build_tone_lut(d->lut, d->cfg.brightness_0_255, d->cfg.gamma_x100);
 
     try {
-        // 1) Construir el mapping (interleave columns, sense rotacions/mirroring)
-        auto map = build_interleave_columns_map(d->cfg.width, d->cfg.height, d->cfg.lanes);
+        // 1) Construir el mapping llenç → cadena de panells (rotació, mirall, serpentine, lanes)
+        auto map = build_chain_map(d->cfg);
 
         // 2) Fer un schedule (10 planes, temporal=0) com al Python
-        size_t pixels_across = d->cfg.width; // 1 panell de 64x64 → 64
+        //    Les dades recorren tots els panells en sèrie: 2x2 de 64x64 → 256
+        size_t pixels_across = (size_t)d->cfg.panel_width
+                             * (size_t)d->cfg.panels_across * (size_t)d->cfg.panels_down;
         auto sched = piomatter::make_temporal_dither_schedule(
             /*n_planes=*/10, pixels_across, /*n_temporal_planes=*/0);
 
         // 3) Geometry: (pixels_across, n_addr_lines, width, height, map, lanes, schedules)
+        //    width x height és el llenç virtual (el framebuffer que veu Java)
         d->geom = std::make_unique<piomatter::matrix_geometry>(
             pixels_across,
             (size_t)d->cfg.n_addr_lines,
@@ -95,15 +211,13 @@ pm_device* pm_open(const pm_config* cfg_in) {
         );
 
         // 4) Crear el core PioMatter amb colorspace RGB888 packed i pinout Active3
-        //    El constructor espera un span<const uint8_t> del framebuffer.
-        std::span<const uint8_t> span_fb(d->fb.data(), d->fb.size());
+        //    El constructor espera un span<const uint8_t> del framebuffer: li donem la
+        //    còpia amb to aplicat, que pm_swap_buffers omple a partir del de Java.
+        std::span<const uint8_t> span_fb(d->out.data(), d->out.size());
         d->dev = std::make_unique<piomatter::piomatter<
             piomatter::active3_pinout,
             piomatter::colorspace_rgb888_packed>>(span_fb, *d->geom);
 
-        // (Opcional) brightness per software: ja l’apliques a Java.
-        // Si en el futur afegeixes brightness HW, guarda'l aquí i aplica'l.
-
     } catch (...) {
         delete d;
         return nullptr;
@@ -123,18 +237,49 @@ void pm_close(pm_device* dev) {
     delete dev;
 }
 
+// Refà la taula amb la config actual. Cal tenir lut_mu.
+static void publish_tone_lut(pm_device* dev) {
+    dev->lut_identity = build_tone_lut(dev->lut, dev->cfg.brightness_0_255, dev->cfg.gamma_x100);
+}
+
 int pm_set_brightness(pm_device* dev, int value_0_255) {
     if (!dev) return -1;
-    // No hi ha setter HW al core; guardem el valor (el Java ja escala en SW)
-    if (value_0_255 < 0) value_0_255 = 0;
-    if (value_0_255 > 255) value_0_255 = 255;
-    dev->cfg.brightness_0_255 = value_0_255;
+    // No hi ha setter HW al core: s'aplica per taula a cada swap
+    std::lock_guard<std::mutex> lock(dev->lut_mu);
+    dev->cfg.brightness_0_255 = std::clamp(value_0_255, 0, 255);
+    publish_tone_lut(dev);
+    return 0;
+}
+
+int pm_set_gamma(pm_device* dev, int gamma_x100) {
+    if (!dev) return -1;
+    if (gamma_x100 < 0 || gamma_x100 > 400) return -2;
+    std::lock_guard<std::mutex> lock(dev->lut_mu);
+    dev->cfg.gamma_x100 = gamma_x100;
+    publish_tone_lut(dev);
     return 0;
 }
 
 int pm_swap_buffers(pm_device* dev) {
     if (!dev || !dev->dev) return -1;
-    // Envia el framebuffer actual al maquinari
+    // Brillantor i gamma: una consulta a la taula per byte (o una còpia si és la identitat).
+    // Instantània de la taula sota el mutex: un canvi durant el swap s'aplica al següent.
+    uint8_t lut[256];
+    bool identity;
+    {
+        std::lock_guard<std::mutex> lock(dev->lut_mu);
+        std::memcpy(lut, dev->lut, sizeof lut);
+        identity = dev->lut_identity;
+    }
+    const uint8_t* src = dev->fb.data();
+    uint8_t* dst = dev->out.data();
+    const size_t n = dev->fb.size();
+    if (identity) {
+        std::memcpy(dst, src, n);
+    } else {
+        for (size_t i = 0; i < n; ++i) dst[i] = lut[src[i]];
+    }
+    // Envia el framebuffer al maquinari
     // (piomatter::piomatter::show() fa la conversió i el blit via el seu thread)
     return dev->dev->show();
 }
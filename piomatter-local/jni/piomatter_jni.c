@@ -15,7 +15,10 @@ static void throw_re(JNIEnv* env, const char* msg) {
 
 JNIEXPORT jlong JNICALL
 Java_com_piomatter_PioMatter_nativeOpen
-  (JNIEnv* env, jclass cls, jint w, jint h, jint addrLines, jint lanes, jint brightness, jint fpsCap)
+  (JNIEnv* env, jclass cls, jint w, jint h,
+   jint panelW, jint panelH, jint across, jint down,
+   jboolean serpentine, jint rotation, jboolean mirrorX, jboolean mirrorY,
+   jint addrLines, jint lanes, jint brightness, jint fpsCap)
 {
     (void)cls;
     pm_config cfg = {
@@ -24,7 +27,15 @@ Java_com_piomatter_PioMatter_nativeOpen
         .n_addr_lines = addrLines,
         .lanes = lanes,
         .brightness_0_255 = brightness,
-        .fps_cap = fpsCap
+        .fps_cap = fpsCap,
+        .panel_width = panelW,
+        .panel_height = panelH,
+        .panels_across = across,
+        .panels_down = down,
+        .serpentine = serpentine ? 1 : 0,
+        .rotation = rotation,
+        .mirror_x = mirrorX ? 1 : 0,
+        .mirror_y = mirrorY ? 1 : 0
     };
     pm_device* d = pm_open(&cfg);
     if (!d) { throw_re(env, "pm_open() failed"); return 0; }
@@ -49,6 +60,15 @@ Java_com_piomatter_PioMatter_nativeSetBrightness
     return pm_set_brightness(d, value);
 }
 
+JNIEXPORT jint JNICALL
+Java_com_piomatter_PioMatter_nativeSetGamma
+  (JNIEnv* env, jclass cls, jlong handle, jint gammaX100)
+{
+    (void)env; (void)cls;
+    pm_device* d = (pm_device*)(uintptr_t)handle;
+    return pm_set_gamma(d, gammaX100);
+}
+
 JNIEXPORT jint JNICALL
 Java_com_piomatter_PioMatter_nativeSwap
   (JNIEnv* env, jclass cls, jlong handle)
@@ -0,0 +1,101 @@
+package com.demos;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.piomatter.*;
+
+/**
+ * Pure-Java check (no JNI, no panel needed): the bulk RGB888 copy must produce
+ * exactly the same bytes as the original per-pixel getRGB/put loop.
+ *
+ *   mvn -q compile exec:java -Dexec.mainClass=com.demos.CheckRGB888
+ */
+public class CheckRGB888 {
+
+    static final int[][] SIZES = { {64, 64}, {128, 64}, {64, 32}, {1, 1}, {7, 3} };
+    static final int[] TYPES = {
+        BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR
+    };
+    static final int STRIDE_PAD = 5; // extra bytes per row, must stay untouched
+
+    public static void main(String[] args) {
+        Random rnd = new Random(42);
+        int checks = 0, failures = 0;
+
+        for (int[] size : SIZES) {
+            for (int type : TYPES) {
+                int w = size[0], h = size[1];
+                BufferedImage img = randomImage(rnd, w, h, type);
+                // Also cover sub-images (raster with translated sample model)
+                BufferedImage parent = randomImage(rnd, w + 3, h + 2, type);
+                BufferedImage sub = parent.getSubimage(2, 1, w, h);
+
+                for (BufferedImage src : new BufferedImage[]{ img, sub }) {
+                    for (int b = -1; b <= 256; b++) {
+                        int stride = w * 3 + STRIDE_PAD;
+                        ByteBuffer expected = ByteBuffer.allocate(stride * h);
+                        ByteBuffer actual = ByteBuffer.allocateDirect(stride * h);
+                        fill(expected, (byte) 0x5A);
+                        fill(actual, (byte) 0x5A);
+
+                        referenceCopy(src, expected, stride, w, h, b);
+                        UtilsRGB888.copy(src, actual, stride, w, h, b);
+
+                        checks++;
+                        if (expected.mismatch(actual) != -1) {
+                            failures++;
+                            System.out.println("MISMATCH size=" + w + "x" + h + " type=" + type
+                                    + " sub=" + (src == sub) + " brightness=" + b
+                                    + " at byte " + expected.mismatch(actual));
+                        }
+                    }
+                }
+            }
+        }
+
+        System.out.println("RGB888 checks: " + checks + ", failures: " + failures);
+        if (failures > 0) System.exit(1);
+    }
+
+    /** Original per-pixel implementation, kept here as the reference. */
+    static void referenceCopy(BufferedImage src, ByteBuffer dstFB, int stride, int width, int height, int brightness) {
+        final int b = Math.max(0, Math.min(255, brightness));
+        for (int y = 0; y < height; y++) {
+            int rowOff = y * stride;
+            for (int x = 0; x < width; x++) {
+                int rgb = src.getRGB(x, y);
+                int r = (rgb >> 16) & 0xFF;
+                int g = (rgb >> 8)  & 0xFF;
+                int bl= (rgb)       & 0xFF;
+
+                if (b != 255) {
+                    r = (r * b) / 255;
+                    g = (g * b) / 255;
+                    bl= (bl* b) / 255;
+                }
+
+                int off = rowOff + x * 3;
+                dstFB.put(off,   (byte) r);
+                dstFB.put(off+1, (byte) g);
+                dstFB.put(off+2, (byte) bl);
+            }
+        }
+    }
+
+    static BufferedImage randomImage(Random rnd, int w, int h, int type) {
+        BufferedImage img = new BufferedImage(w, h, type);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) img.setRGB(x, y, rnd.nextInt());
+        }
+        return img;
+    }
+
+    static void fill(ByteBuffer buf, byte v) {
+        byte[] tmp = new byte[buf.capacity()];
+        Arrays.fill(tmp, v);
+        buf.put(0, tmp);
+    }
+}
@@ -10,7 +10,7 @@ public class DemoAnim {
     static final int WIDTH = 64, HEIGHT = 64;
     static final int ADDR = 5;          // ABCDE (64x64)
     static final int LANES = 2;         // 2 lanes
-    static final int BRIGHTNESS = 200;  // 0..255 (software)
+    static final int BRIGHTNESS = 200;  // 0..255 (applied by the backend at swap)
     static final int FPS_CAP = 60;      // FPS target
     static final int WAIT_SECONDS = 10; // Countdown duration
 
@@ -21,8 +21,8 @@ public class DemoAnim {
 
     public static void main(String[] args) throws Exception {
 
-        // 0) Open Piomatter (FPS cap handled by UtilsFPS)
-        var pm = new PioMatter(WIDTH, HEIGHT, ADDR, LANES, BRIGHTNESS, 0);
+        // 0) Open Piomatter (FPS cap handled by UtilsFPS; -Dpiomatter.backend=soft runs headless)
+        var pm = MatrixBackend.open(WIDTH, HEIGHT, ADDR, LANES, BRIGHTNESS, 0);
         var fb = pm.mapFramebuffer();
 
         System.out.println("Config: WIDTH=" + WIDTH + ", HEIGHT=" + HEIGHT + ", LANES=" + LANES + ", BRIGHTNESS=" + BRIGHTNESS);
@@ -100,14 +100,14 @@ public class DemoAnim {
                 // FPS overlay (top-left)
                 fps.drawOverlay(g, 2, 10);
 
-                // Copy BufferedImage → framebuffer RGB888 with defined brightness
-                PioMatter.copyBufferedImageToRGB888(back, fb.data, fb.strideBytes, WIDTH, HEIGHT, BRIGHTNESS);
+                // Copy BufferedImage → framebuffer RGB888 at full scale (the backend applies brightness)
+                PioMatter.copyBufferedImageToRGB888(back, fb.data, fb.strideBytes, WIDTH, HEIGHT, 255);
 
                 // Present frame
                 pm.swap();
 
                 // End frame + cap
-                fps.endFrameAndCap(FPS_CAP);
+                fps.endFrameAndPace(FPS_CAP);
             }
 
         } finally {
@@ -115,6 +115,7 @@ public class DemoAnim {
             // Fade to black at the end
             PioMatter.flushBlack(pm, fb, 3, 15);
             pm.close();
+            if (pm instanceof SoftwareBackend soft) System.out.println(soft.summary());
         }
 
         System.out.println("END animated demo after " + WAIT_SECONDS + " seconds.");
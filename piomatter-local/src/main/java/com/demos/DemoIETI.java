@@ -13,14 +13,14 @@ public class DemoIETI {
     static final int WIDTH = 64, HEIGHT = 64;
     static final int ADDR = 5;          // ABCDE (64x64)
     static final int LANES = 2;         // 2 lanes
-    static final int BRIGHTNESS = 200;  // 0..255 (software)
+    static final int BRIGHTNESS = 200;  // 0..255 (applied by the backend at swap)
     static final int FPS_CAP = 0;
     static final int WAIT_SECONDS = 10;
 
     public static void main(String[] args) throws Exception {
 
-        // 0) Open Piomatter
-        var pm = new PioMatter(WIDTH, HEIGHT, ADDR, LANES, BRIGHTNESS, FPS_CAP);
+        // 0) Open Piomatter (-Dpiomatter.backend=soft runs headless)
+        var pm = MatrixBackend.open(WIDTH, HEIGHT, ADDR, LANES, BRIGHTNESS, FPS_CAP);
         var fb = pm.mapFramebuffer(); 
 
         System.out.println("Config: WIDTH=" + WIDTH + ", HEIGHT=" + HEIGHT + ", LANES=" + LANES + ", BRIGHTNESS=" + BRIGHTNESS);
@@ -95,7 +95,7 @@ public class DemoIETI {
             g.drawRect(0, 0, WIDTH - 1, HEIGHT - 1);
 
             // 2) Copy BufferedImage → framebuffer RGB888 with defined brightness
-            PioMatter.copyBufferedImageToRGB888(img, fb.data, fb.strideBytes, WIDTH, HEIGHT, BRIGHTNESS);
+            PioMatter.copyBufferedImageToRGB888(img, fb.data, fb.strideBytes, WIDTH, HEIGHT, 255);
 
             // 3) Show result during 5 seconds
             pm.swap();
@@ -108,6 +108,7 @@ public class DemoIETI {
             // Clear to black before exiting
             PioMatter.flushBlack(pm, fb, 3, 15);
             pm.close();
+            if (pm instanceof SoftwareBackend soft) System.out.println(soft.summary());
         }
 
         System.out.println("END basic demo.");
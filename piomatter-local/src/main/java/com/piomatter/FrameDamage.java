@@ -0,0 +1,108 @@
+package com.piomatter;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Damage tracking between a back-buffer and the RGB888 framebuffer.
+ *
+ * Keeps a shadow copy of the pixels last written to the framebuffer and, on each
+ * {@link #flush}, compares the back-buffer row by row: only rows that changed are
+ * converted and copied. When {@code flush} returns 0 the framebuffer already shows
+ * the frame, so the caller can skip {@code swap()} entirely.
+ */
+public final class FrameDamage {
+
+    private final int width, height;
+    private final int[] shadow;       // pixels last copied to the framebuffer
+    private final int[] line;         // scratch for non-int images
+    private final byte[] row;         // scratch RGB888 row
+    private int lastBrightness = -1;
+    private boolean full = true;      // next flush copies every row
+
+    // Dirty region of the last flush (rows [dirtyY0, dirtyY1))
+    private int dirtyY0 = 0, dirtyY1 = 0, dirtyRows = 0;
+
+    /**
+     * @param width  pixels per row tracked
+     * @param height rows tracked
+     */
+    public FrameDamage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.shadow = new int[width * height];
+        this.line = new int[width];
+        this.row = new byte[width * 3];
+    }
+
+    /** Forces the next {@link #flush} to copy the whole frame (e.g. after the framebuffer was cleared). */
+    public void invalidate() {
+        full = true;
+    }
+
+    /**
+     * Copies the rows of {@code back} that changed since the previous flush.
+     *
+     * @param back       back-buffer (fast path for TYPE_INT_RGB / TYPE_INT_ARGB)
+     * @param dstFB      RGB888 framebuffer
+     * @param stride     bytes per framebuffer row
+     * @param brightness 0..255; a change of brightness redraws every row
+     * @return number of rows copied (0 = nothing changed, no swap needed)
+     */
+    public int flush(BufferedImage back, ByteBuffer dstFB, int stride, int brightness) {
+        final int b = Math.max(0, Math.min(255, brightness));
+        if (b != lastBrightness) {
+            lastBrightness = b;
+            full = true;
+        }
+        final byte[] lut = UtilsRGB888.brightnessLut(b);
+
+        int[] pixels = UtilsRGB888.intPixels(back);
+        int scan = 0, base = 0;
+        if (pixels != null) {
+            scan = UtilsRGB888.scanlineStride(back);
+            base = UtilsRGB888.pixelBase(back);
+        }
+
+        int count = 0, y0 = height, y1 = 0;
+        for (int y = 0; y < height; y++) {
+            int[] src;
+            int off;
+            if (pixels != null) {
+                src = pixels;
+                off = base + y * scan;
+            } else {
+                back.getRGB(0, y, width, 1, line, 0, width);
+                src = line;
+                off = 0;
+            }
+
+            int sOff = y * width;
+            if (!full && Arrays.mismatch(src, off, off + width, shadow, sOff, sOff + width) < 0) continue;
+
+            System.arraycopy(src, off, shadow, sOff, width);
+            UtilsRGB888.packRow(src, off, row, width, lut);
+            dstFB.put(y * stride, row, 0, row.length);
+
+            count++;
+            if (y < y0) y0 = y;
+            y1 = y + 1;
+        }
+
+        full = false;
+        dirtyRows = count;
+        dirtyY0 = (count == 0) ? 0 : y0;
+        dirtyY1 = (count == 0) ? 0 : y1;
+        return count;
+    }
+
+    /** @return rows copied by the last flush */
+    public int getDirtyRows() { return dirtyRows; }
+
+    /** @return first dirty row of the last flush (inclusive) */
+    public int getDirtyY0() { return dirtyY0; }
+
+    /** @return last dirty row of the last flush (exclusive) */
+    public int getDirtyY1() { return dirtyY1; }
+}
@@ -0,0 +1,223 @@
+package com.piomatter;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-stage frame-time histograms for a render loop: where each frame's time goes
+ * (draw, RGB888 copy, swap, sleep) and how the tail looks (p50/p95/p99/max), beyond the
+ * single EMA of {@link UtilsFPS}.
+ *
+ * Buckets are fixed and log-linear (HdrHistogram style): exact below 64 ns, then 32 buckets
+ * per power of two, so any value is reported within ~3% up to ~68 s. Recording never
+ * allocates and never locks.
+ *
+ * Threading: one render thread records; any thread may read at any time. Counters are
+ * written with release stores and read with acquire loads, so readers see consistent
+ * numbers without stopping the loop (a read taken in the middle of a frame may miss the
+ * last few increments).
+ *
+ * Usage per frame:
+ * <pre>
+ *   stats.beginFrame();
+ *   ... draw ...        stats.mark(Stage.DRAW);
+ *   ... copy ...        stats.mark(Stage.COPY);
+ *   pm.swap();          stats.mark(Stage.SWAP);
+ *   fps.endFrameAndPace(cap); stats.mark(Stage.SLEEP);
+ *   stats.endFrame(fps.lastFrameMissed());
+ * </pre>
+ * A stage may be marked several times in a frame (the times add up); stages that did not
+ * run in a frame are not recorded for it.
+ */
+public final class FrameStats {
+
+    /**
+     * Measured stages; {@link #FRAME} is the whole frame, recorded by {@link #endFrame}.
+     * {@link #DECODE} runs off the render loop: record it with {@link #record(Stage, long)} on
+     * an instance owned by the decoding thread.
+     */
+    public enum Stage { DRAW, COPY, SWAP, SLEEP, DECODE, FRAME }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private static final int SUB_BITS = 5;                   // 32 buckets per power of two
+    private static final int HALF = 1 << SUB_BITS;
+    private static final int MAX_EXP = 36;                   // values clamp at 2^36 ns (~68 s)
+    /** Buckets per stage. */
+    public static final int BUCKETS = (MAX_EXP - SUB_BITS - 1) * HALF + 2 * HALF;
+
+    // Slots per stage in the shared arrays: count, sum, max
+    private static final int COUNT = 0, SUM = 1, MAX = 2, TOTALS = 3;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(STAGES.length * BUCKETS);
+    private final AtomicLongArray totals = new AtomicLongArray(STAGES.length * TOTALS);
+    private final AtomicLongArray frames = new AtomicLongArray(2); // [frames, dropped]
+
+    // Render thread only
+    private final long[] frameNs = new long[STAGES.length];
+    private final boolean[] ran = new boolean[STAGES.length];
+    private long frameStartNs, lastMarkNs;
+
+    /** Starts a frame (and the first stage). */
+    public void beginFrame() {
+        frameStartNs = lastMarkNs = System.nanoTime();
+    }
+
+    /**
+     * Ends the stage that started at the previous mark (or at {@link #beginFrame()}).
+     *
+     * @param stage stage the elapsed time belongs to
+     */
+    public void mark(Stage stage) {
+        long now = System.nanoTime();
+        frameNs[stage.ordinal()] += now - lastMarkNs;
+        ran[stage.ordinal()] = true;
+        lastMarkNs = now;
+    }
+
+    /**
+     * Records the frame: every stage that ran, plus the whole frame time.
+     *
+     * @param dropped true if the frame missed its deadline
+     */
+    public void endFrame(boolean dropped) {
+        long now = System.nanoTime();
+        for (int s = 0; s < Stage.FRAME.ordinal(); s++) {
+            if (ran[s]) record(s, frameNs[s]);
+            frameNs[s] = 0L;
+            ran[s] = false;
+        }
+        record(Stage.FRAME.ordinal(), now - frameStartNs);
+        frames.lazySet(0, frames.get(0) + 1);
+        if (dropped) frames.lazySet(1, frames.get(1) + 1);
+    }
+
+    /**
+     * Records one value directly (for stages measured elsewhere).
+     *
+     * @param stage stage
+     * @param ns    duration in nanoseconds
+     */
+    public void record(Stage stage, long ns) {
+        record(stage.ordinal(), ns);
+    }
+
+    private void record(int s, long ns) {
+        long v = Math.max(0L, ns);
+        int i = s * BUCKETS + bucketOf(v);
+        buckets.lazySet(i, buckets.get(i) + 1);
+        int t = s * TOTALS;
+        totals.lazySet(t + COUNT, totals.get(t + COUNT) + 1);
+        totals.lazySet(t + SUM, totals.get(t + SUM) + v);
+        if (v > totals.get(t + MAX)) totals.lazySet(t + MAX, v);
+    }
+
+    // ───────────────────────────── Queries (any thread) ─────────────────────────────
+
+    /** @return frames recorded */
+    public long frames() { return frames.get(0); }
+
+    /** @return frames recorded as dropped (deadline missed) */
+    public long droppedFrames() { return frames.get(1); }
+
+    /** @return values recorded for a stage */
+    public long count(Stage stage) { return totals.get(stage.ordinal() * TOTALS + COUNT); }
+
+    /** @return sum of the values recorded for a stage, in ns */
+    public long sumNs(Stage stage) { return totals.get(stage.ordinal() * TOTALS + SUM); }
+
+    /** @return exact maximum recorded for a stage, in ns */
+    public long maxNs(Stage stage) { return totals.get(stage.ordinal() * TOTALS + MAX); }
+
+    /**
+     * @param stage stage
+     * @param p     percentile in (0, 100]
+     * @return upper bound of the bucket holding that percentile, in ns (0 if nothing recorded);
+     *         never above {@link #maxNs}
+     */
+    public long percentileNs(Stage stage, double p) {
+        long n = count(stage);
+        if (n == 0) return 0L;
+        long rank = Math.max(1L, (long) Math.ceil(n * Math.min(100.0, p) / 100.0));
+        int base = stage.ordinal() * BUCKETS;
+        long seen = 0L;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += buckets.get(base + b);
+            if (seen >= rank) return Math.min(bucketUpperNs(b), maxNs(stage));
+        }
+        return maxNs(stage);
+    }
+
+    /**
+     * @param stage  stage
+     * @param bucket bucket index in [0, {@link #BUCKETS})
+     * @return values recorded in that bucket
+     */
+    public long bucketCount(Stage stage, int bucket) {
+        return buckets.get(stage.ordinal() * BUCKETS + bucket);
+    }
+
+    /**
+     * Copies a stage's bucket counts, to compute percentiles over a window later
+     * ({@link #percentileNs(long[], long[], double)}).
+     *
+     * @param stage stage
+     * @param into  array of {@link #BUCKETS} counts (reused by the caller)
+     * @return {@code into}
+     */
+    public long[] copyBuckets(Stage stage, long[] into) {
+        int base = stage.ordinal() * BUCKETS;
+        for (int b = 0; b < BUCKETS; b++) into[b] = buckets.get(base + b);
+        return into;
+    }
+
+    /**
+     * Percentile of the values recorded between two {@link #copyBuckets} copies.
+     *
+     * @param now    later copy
+     * @param before earlier copy of the same stage
+     * @param p      percentile in (0, 100]
+     * @return upper bound of the bucket holding that percentile, in ns (0 if nothing was recorded)
+     */
+    public static long percentileNs(long[] now, long[] before, double p) {
+        long n = 0L;
+        for (int b = 0; b < BUCKETS; b++) n += now[b] - before[b];
+        if (n <= 0) return 0L;
+        long rank = Math.max(1L, (long) Math.ceil(n * Math.min(100.0, p) / 100.0));
+        long seen = 0L;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += now[b] - before[b];
+            if (seen >= rank) return bucketUpperNs(b);
+        }
+        return bucketUpperNs(BUCKETS - 1);
+    }
+
+    /** @return largest value (ns) that falls into {@code bucket} */
+    public static long bucketUpperNs(int bucket) {
+        int b = Math.max(0, bucket / HALF - 1);
+        long sub = bucket - (long) b * HALF;
+        return ((sub + 1) << b) - 1;
+    }
+
+    /** @return bucket index of a value in ns */
+    static int bucketOf(long ns) {
+        long v = Math.min(ns, (1L << MAX_EXP) - 1);
+        if (v < 2 * HALF) return (int) v;
+        int b = (63 - Long.numberOfLeadingZeros(v)) - SUB_BITS;
+        return (int) (b * HALF + (v >>> b));
+    }
+
+    /** @return one line per stage with p50/p95/p99/max in ms, plus frame and drop counts */
+    public String summary() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(String.format(Locale.ROOT, "[stats] frames=%d dropped=%d", frames(), droppedFrames()));
+        for (Stage s : STAGES) {
+            if (count(s) == 0) continue;
+            sb.append(String.format(Locale.ROOT, "%n  %-5s n=%d p50=%.2f p95=%.2f p99=%.2f max=%.2f ms",
+                    s.name().toLowerCase(Locale.ROOT), count(s),
+                    percentileNs(s, 50) / 1e6, percentileNs(s, 95) / 1e6,
+                    percentileNs(s, 99) / 1e6, maxNs(s) / 1e6));
+        }
+        return sb.toString();
+    }
+}
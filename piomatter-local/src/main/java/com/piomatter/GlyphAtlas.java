@@ -0,0 +1,232 @@
+package com.piomatter;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bitmap font for LED panels: a Java2D {@link Font} rasterised once into a glyph atlas.
+ *
+ * Each glyph keeps its integer advance width and a tight 1-bit mask (the panel renders
+ * text without antialiasing). Measuring and drawing then work directly on an
+ * {@code int[]} back-buffer with no Java2D text calls and no allocation.
+ *
+ * Covered characters: printable ASCII, Latin-1 and a few typographic extras
+ * ({@code … ‘ ’ “ ” – — €}). Anything else is drawn as {@code ?}.
+ * Atlases are immutable and cached per font, so they can be shared between threads.
+ */
+public final class GlyphAtlas {
+
+    /** Non Latin-1 characters also rasterised. */
+    private static final String EXTRA = "…‘’“”–—€";
+
+    private static final Map<Font, GlyphAtlas> CACHE = new ConcurrentHashMap<>();
+
+    private final Font font;
+    private final int ascent, descent, lineHeight;
+
+    // Per-glyph data, indexed by glyph number (see glyphIndex)
+    private final int[] advance;
+    private final int[] offX, offY;   // mask origin relative to pen position / baseline
+    private final int[] maskW, maskH;
+    private final int[] maskStart;    // first byte of the glyph in 'masks'
+    private final byte[] masks;       // 1 = ink, row-major, all glyphs back to back
+
+    /**
+     * Returns the shared atlas for a font, rasterising it on first use.
+     *
+     * @param font font to rasterise
+     * @return atlas for that font
+     */
+    public static GlyphAtlas of(Font font) {
+        return CACHE.computeIfAbsent(font, GlyphAtlas::new);
+    }
+
+    private GlyphAtlas(Font font) {
+        this.font = font;
+        int n = 256 + EXTRA.length();
+        advance = new int[n];
+        offX = new int[n];
+        offY = new int[n];
+        maskW = new int[n];
+        maskH = new int[n];
+        maskStart = new int[n];
+
+        // Scratch canvas with room for overhangs on every side
+        BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D pg = probe.createGraphics();
+        FontMetrics fm = pg.getFontMetrics(font);
+        ascent = fm.getAscent();
+        descent = fm.getDescent();
+        lineHeight = fm.getHeight();
+        int pad = Math.max(4, lineHeight);
+        int cellW = Math.max(1, fm.getMaxAdvance()) + 2 * pad;
+        int cellH = fm.getMaxAscent() + fm.getMaxDescent() + 2 * pad;
+        pg.dispose();
+
+        BufferedImage cell = new BufferedImage(cellW, cellH, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = cell.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+        g.setFont(font);
+        int penX = pad, baseY = pad + fm.getMaxAscent();
+
+        byte[] buf = new byte[1024];
+        int used = 0;
+        int[] px = new int[cellW * cellH];
+        for (int i = 0; i < n; i++) {
+            char c = charOf(i);
+            boolean printable = (c >= 32 && c < 127) || c >= 160;
+            if (!printable) continue;
+            advance[i] = fm.charWidth(c);
+
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, cellW, cellH);
+            g.setColor(Color.WHITE);
+            g.drawString(String.valueOf(c), penX, baseY);
+            cell.getRGB(0, 0, cellW, cellH, px, 0, cellW);
+
+            // Tight bounds of the ink
+            int x0 = cellW, y0 = cellH, x1 = -1, y1 = -1;
+            for (int y = 0; y < cellH; y++) {
+                for (int x = 0; x < cellW; x++) {
+                    if ((px[y * cellW + x] & 0xFFFFFF) != 0) {
+                        if (x < x0) x0 = x;
+                        if (x > x1) x1 = x;
+                        if (y < y0) y0 = y;
+                        if (y > y1) y1 = y;
+                    }
+                }
+            }
+            if (x1 < 0) continue; // blank glyph (space): advance only
+
+            int w = x1 - x0 + 1, h = y1 - y0 + 1;
+            if (used + w * h > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, used + w * h));
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    buf[used + y * w + x] = (byte) (((px[(y0 + y) * cellW + x0 + x] & 0xFFFFFF) != 0) ? 1 : 0);
+                }
+            }
+            offX[i] = x0 - penX;
+            offY[i] = y0 - baseY;
+            maskW[i] = w;
+            maskH[i] = h;
+            maskStart[i] = used;
+            used += w * h;
+        }
+        g.dispose();
+        masks = Arrays.copyOf(buf, used);
+    }
+
+    private static char charOf(int glyph) {
+        return glyph < 256 ? (char) glyph : EXTRA.charAt(glyph - 256);
+    }
+
+    /** Glyph number for a character ({@code ?} when not covered). */
+    private static int glyphIndex(char c) {
+        if (c < 256) {
+            if ((c >= 32 && c < 127) || c >= 160) return c;
+            return c == '\t' ? ' ' : '?';
+        }
+        int e = EXTRA.indexOf(c);
+        return e >= 0 ? 256 + e : '?';
+    }
+
+    /** @return the font this atlas was built from */
+    public Font getFont() { return font; }
+
+    /** @return pixels from the baseline to the top of most glyphs */
+    public int getAscent() { return ascent; }
+
+    /** @return pixels from the baseline to the bottom of most glyphs */
+    public int getDescent() { return descent; }
+
+    /** @return recommended distance between baselines */
+    public int getLineHeight() { return lineHeight; }
+
+    /**
+     * @param c character
+     * @return advance width in pixels
+     */
+    public int charWidth(char c) {
+        return advance[glyphIndex(c)];
+    }
+
+    /**
+     * Sums the advance widths of {@code s[from, to)}.
+     *
+     * @return width in pixels
+     */
+    public int stringWidth(CharSequence s, int from, int to) {
+        int w = 0;
+        for (int i = from; i < to; i++) w += advance[glyphIndex(s.charAt(i))];
+        return w;
+    }
+
+    /** @return width of the whole string in pixels */
+    public int stringWidth(CharSequence s) {
+        return stringWidth(s, 0, s.length());
+    }
+
+    /**
+     * Draws a string into a packed-RGB back-buffer, clipped to the whole buffer.
+     *
+     * @param dst      pixels, row-major, {@code width} ints per row
+     * @param width    buffer width
+     * @param height   buffer height
+     * @param s        text
+     * @param x        pen position of the first glyph
+     * @param baseline baseline Y
+     * @param rgb      colour (0xRRGGBB)
+     * @return pen position after the last glyph
+     */
+    public int drawString(int[] dst, int width, int height, CharSequence s, int x, int baseline, int rgb) {
+        return drawString(dst, width, 0, 0, width, height, s, 0, s.length(), x, baseline, rgb);
+    }
+
+    /**
+     * Draws {@code s[from, to)} into a packed-RGB back-buffer, clipped to a rectangle.
+     *
+     * @param dst      pixels, row-major, {@code stride} ints per row
+     * @param stride   ints per row
+     * @param clipX0   clip left (inclusive)
+     * @param clipY0   clip top (inclusive)
+     * @param clipX1   clip right (exclusive)
+     * @param clipY1   clip bottom (exclusive)
+     * @param s        text
+     * @param from     first char (inclusive)
+     * @param to       last char (exclusive)
+     * @param x        pen position of the first glyph
+     * @param baseline baseline Y
+     * @param rgb      colour (0xRRGGBB)
+     * @return pen position after the last glyph
+     */
+    public int drawString(int[] dst, int stride, int clipX0, int clipY0, int clipX1, int clipY1,
+                          CharSequence s, int from, int to, int x, int baseline, int rgb) {
+        for (int i = from; i < to && x < clipX1; i++) {
+            int gi = glyphIndex(s.charAt(i));
+            int w = maskW[gi];
+            if (w > 0) {
+                int gx = x + offX[gi], gy = baseline + offY[gi], h = maskH[gi], m = maskStart[gi];
+                int ya = Math.max(clipY0, gy), yb = Math.min(clipY1, gy + h);
+                int xa = Math.max(clipX0, gx), xb = Math.min(clipX1, gx + w);
+                for (int y = ya; y < yb; y++) {
+                    int row = m + (y - gy) * w - gx;
+                    int o = y * stride;
+                    for (int px = xa; px < xb; px++) {
+                        if (masks[row + px] != 0) dst[o + px] = rgb;
+                    }
+                }
+            }
+            x += advance[gi];
+        }
+        return x;
+    }
+}
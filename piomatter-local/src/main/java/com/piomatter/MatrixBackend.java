@@ -0,0 +1,80 @@
+package com.piomatter;
+
+import java.util.Locale;
+
+/**
+ * Display backend behind the render loops: the real Pi5 panel ({@link PioMatter}, JNI)
+ * or a pure-Java in-memory panel ({@link SoftwareBackend}) for headless runs.
+ *
+ * Contract (same for every backend):
+ * - {@link #mapFramebuffer()} exposes a packed RGB888 buffer the caller writes into.
+ * - {@link #swap()} presents the current contents of that buffer, with brightness and
+ *   gamma applied on the way through a 256-entry table: callers write full-scale colours
+ *   and never scale pixels themselves.
+ * - {@link #setBrightness} / {@link #setGamma} only rebuild that table; they take effect
+ *   at the next swap.
+ *
+ * The backend is chosen with the system property {@code piomatter.backend}
+ * (or the env var {@code PIOMATTER_BACKEND}): {@code jni} (default) or {@code soft}.
+ * The gamma curve comes from {@code piomatter.gamma} (default 1.0, linear).
+ */
+public interface MatrixBackend extends AutoCloseable {
+
+    /** System property used by {@link #open} to choose the backend. */
+    String BACKEND_PROPERTY = "piomatter.backend";
+
+    /** System property with the gamma exponent applied by {@link #open}. */
+    String GAMMA_PROPERTY = "piomatter.gamma";
+
+    /** Releases the backend. Safe to call more than once. */
+    @Override
+    void close();
+
+    /** Sets the panel brightness (0..255), applied at every swap. */
+    void setBrightness(int v);
+
+    /**
+     * Sets the gamma curve applied at every swap together with the brightness.
+     *
+     * @param gamma exponent in [1/4, 4]; 1 = linear
+     */
+    void setGamma(double gamma);
+
+    /** Presents the current framebuffer contents. */
+    void swap();
+
+    /** @return the RGB888 framebuffer shared with the backend */
+    PioMatter.FB mapFramebuffer();
+
+    /** Writes a single pixel to the framebuffer. */
+    void putPixel(int x, int y, int r, int g, int b);
+
+    /**
+     * Opens the backend selected by {@code piomatter.backend} / {@code PIOMATTER_BACKEND}.
+     * Parameters are the same as {@link PioMatter#PioMatter(int, int, int, int, int, int)}.
+     *
+     * @return an open backend
+     */
+    static MatrixBackend open(int w, int h, int addrLines, int lanes, int brightness, int fpsCap) {
+        return open(PanelLayout.single(w, h), addrLines, lanes, brightness, fpsCap);
+    }
+
+    /**
+     * Same as {@link #open(int, int, int, int, int, int)} for a chain of panels. The
+     * framebuffer covers the whole canvas; the software backend simply has the canvas size.
+     *
+     * @return an open backend
+     */
+    static MatrixBackend open(PanelLayout layout, int addrLines, int lanes, int brightness, int fpsCap) {
+        String kind = System.getProperty(BACKEND_PROPERTY, System.getenv("PIOMATTER_BACKEND"));
+        kind = (kind == null) ? "jni" : kind.trim().toLowerCase(Locale.ROOT);
+        MatrixBackend backend = switch (kind) {
+            case "soft", "software", "headless" -> new SoftwareBackend(layout.canvasWidth(), layout.canvasHeight(), brightness);
+            case "jni", "pi", "" -> new PioMatter(layout, addrLines, lanes, brightness, fpsCap);
+            default -> throw new IllegalArgumentException("Backend desconegut: " + kind + " (jni|soft)");
+        };
+        String gamma = System.getProperty(GAMMA_PROPERTY);
+        if (gamma != null && !gamma.isBlank()) backend.setGamma(Double.parseDouble(gamma.trim()));
+        return backend;
+    }
+}
@@ -0,0 +1,133 @@
+package com.piomatter;
+
+import java.util.Locale;
+
+/**
+ * Geometry of a chain of HUB75 panels shown as one virtual canvas.
+ *
+ * {@code panelsAcross x panelsDown} panels of {@code panelWidth x panelHeight} form a wall.
+ * The chain starts at the top-left panel and runs left to right along each row; with
+ * {@code serpentine} the odd rows run right to left with their panels upside down (zig-zag
+ * cabling). The canvas can be rotated clockwise and mirrored on top of that.
+ *
+ * The native backend turns this into a pixel map once, at open time, so the framebuffer
+ * is simply the canvas: render loops draw {@link #canvasWidth()} x {@link #canvasHeight()}
+ * pixels with no remapping on the Java side.
+ *
+ * @param panelWidth   width of one panel
+ * @param panelHeight  height of one panel
+ * @param panelsAcross panels per row
+ * @param panelsDown   rows of panels
+ * @param serpentine   odd rows are cabled back right to left, rotated 180°
+ * @param rotation     clockwise rotation of the canvas: 0, 90, 180 or 270
+ * @param mirrorX      mirror the canvas horizontally
+ * @param mirrorY      mirror the canvas vertically
+ */
+public record PanelLayout(int panelWidth, int panelHeight, int panelsAcross, int panelsDown,
+                          boolean serpentine, int rotation, boolean mirrorX, boolean mirrorY) {
+
+    /** System property read by {@link #fromSystemProperties}. */
+    public static final String LAYOUT_PROPERTY = "piomatter.layout";
+
+    public PanelLayout {
+        if (panelWidth <= 0 || panelHeight <= 0 || panelsAcross <= 0 || panelsDown <= 0) {
+            throw new IllegalArgumentException("Geometria de panells invàlida: " + panelsAcross + "x" + panelsDown
+                    + " de " + panelWidth + "x" + panelHeight);
+        }
+        if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+            throw new IllegalArgumentException("Rotació invàlida: " + rotation + " (0|90|180|270)");
+        }
+    }
+
+    /**
+     * @param width  panel width
+     * @param height panel height
+     * @return a single panel, no rotation or mirroring
+     */
+    public static PanelLayout single(int width, int height) {
+        return new PanelLayout(width, height, 1, 1, false, 0, false, false);
+    }
+
+    /** @return width of the virtual canvas (and of the framebuffer) */
+    public int canvasWidth() {
+        return swapsAxes() ? panelHeight * panelsDown : panelWidth * panelsAcross;
+    }
+
+    /** @return height of the virtual canvas (and of the framebuffer) */
+    public int canvasHeight() {
+        return swapsAxes() ? panelWidth * panelsAcross : panelHeight * panelsDown;
+    }
+
+    /** @return number of chained panels */
+    public int panelCount() {
+        return panelsAcross * panelsDown;
+    }
+
+    private boolean swapsAxes() {
+        return rotation == 90 || rotation == 270;
+    }
+
+    /**
+     * Parses {@code <across>x<down>[:<panelW>x<panelH>][,serpentine][,rot=<deg>][,mirror=x|y|xy]},
+     * e.g. {@code 2x2:64x64,serpentine,rot=90}.
+     *
+     * @param spec     layout text
+     * @param defPanel panel size when the spec does not give one
+     * @return the layout
+     * @throws IllegalArgumentException if the spec is not valid
+     */
+    public static PanelLayout parse(String spec, PanelLayout defPanel) {
+        String[] parts = spec.trim().toLowerCase(Locale.ROOT).split("\\s*,\\s*");
+        String[] chainAndPanel = parts[0].split(":");
+        int[] chain = size(chainAndPanel[0]);
+        int[] panel = (chainAndPanel.length > 1) ? size(chainAndPanel[1])
+                : new int[] {defPanel.panelWidth, defPanel.panelHeight};
+
+        boolean serpentine = false, mirrorX = false, mirrorY = false;
+        int rotation = 0;
+        for (int i = 1; i < parts.length; i++) {
+            String p = parts[i];
+            if (p.equals("serpentine")) {
+                serpentine = true;
+            } else if (p.startsWith("rot=")) {
+                rotation = Integer.parseInt(p.substring(4));
+            } else if (p.startsWith("mirror=")) {
+                String axes = p.substring(7);
+                if (!axes.matches("x|y|xy|yx")) throw new IllegalArgumentException("Mirall invàlid: " + p);
+                mirrorX = axes.contains("x");
+                mirrorY = axes.contains("y");
+            } else {
+                throw new IllegalArgumentException("Opció de geometria desconeguda: " + p);
+            }
+        }
+        return new PanelLayout(panel[0], panel[1], chain[0], chain[1], serpentine, rotation, mirrorX, mirrorY);
+    }
+
+    /**
+     * Reads {@code piomatter.layout} (see {@link #parse}); without it, a single panel.
+     *
+     * @param defPanel single panel used by default (and its size, if the property omits it)
+     * @return the layout
+     */
+    public static PanelLayout fromSystemProperties(PanelLayout defPanel) {
+        String spec = System.getProperty(LAYOUT_PROPERTY);
+        return (spec == null || spec.isBlank()) ? defPanel : parse(spec, defPanel);
+    }
+
+    private static int[] size(String wxh) {
+        String[] p = wxh.split("x");
+        if (p.length != 2) throw new IllegalArgumentException("Mida invàlida: " + wxh);
+        return new int[] {Integer.parseInt(p[0].trim()), Integer.parseInt(p[1].trim())};
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder()
+                .append(panelsAcross).append('x').append(panelsDown)
+                .append(':').append(panelWidth).append('x').append(panelHeight);
+        if (serpentine) sb.append(",serpentine");
+        if (rotation != 0) sb.append(",rot=").append(rotation);
+        if (mirrorX || mirrorY) sb.append(",mirror=").append(mirrorX ? "x" : "").append(mirrorY ? "y" : "");
+        return sb.append(" → ").append(canvasWidth()).append('x').append(canvasHeight()).toString();
+    }
+}
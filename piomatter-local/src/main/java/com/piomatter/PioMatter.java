@@ -3,10 +3,21 @@ package com.piomatter;
 import java.awt.image.BufferedImage;
 import java.nio.ByteBuffer;
 
-public final class PioMatter {
-    static { System.loadLibrary("piomatterjni"); }
+/**
+ * JNI backend for the Pi5 panel (RP1 PIO). The native library is loaded on the first
+ * instance, so the static helpers can also be used without the hardware.
+ */
+public final class PioMatter implements MatrixBackend {
+    private static boolean nativeLoaded = false;
     private long handle;
 
+    private static synchronized void loadNative() {
+        if (!nativeLoaded) {
+            System.loadLibrary("piomatterjni");
+            nativeLoaded = true;
+        }
+    }
+
     public static final class FB {
         public final ByteBuffer data;
         public final int width, height, strideBytes, bpp;
@@ -15,52 +26,63 @@ public final class PioMatter {
         }
     }
 
-    private static native long   nativeOpen(int w, int h, int addrLines, int lanes, int brightness, int fpsCap);
+    private static native long   nativeOpen(int w, int h, int panelW, int panelH, int across, int down,
+                                            boolean serpentine, int rotation, boolean mirrorX, boolean mirrorY,
+                                            int addrLines, int lanes, int brightness, int fpsCap);
     private static native void   nativeClose(long h);
     private static native int    nativeSetBrightness(long h, int v);
+    private static native int    nativeSetGamma(long h, int gammaX100);
     private static native int    nativeSwap(long h);
     private static native FB     nativeMapFramebuffer(long h);
     private static native int    nativePutPixel(long h, int x, int y, int r, int g, int b);
 
     public PioMatter(int w, int h, int addrLines, int lanes, int brightness, int fpsCap) {
-        handle = nativeOpen(w, h, addrLines, lanes, brightness, fpsCap);
-        if (handle == 0) throw new RuntimeException("No s'ha pogut obrir Piomatter");
+        this(PanelLayout.single(w, h), addrLines, lanes, brightness, fpsCap);
+    }
+
+    /**
+     * Opens a chain of panels as one canvas. The pixel map (chain order, serpentine rows,
+     * rotation, mirroring) is built once by the native side; the framebuffer has the
+     * canvas size ({@link PanelLayout#canvasWidth()} x {@link PanelLayout#canvasHeight()}).
+     */
+    public PioMatter(PanelLayout layout, int addrLines, int lanes, int brightness, int fpsCap) {
+        loadNative();
+        handle = nativeOpen(layout.canvasWidth(), layout.canvasHeight(),
+                layout.panelWidth(), layout.panelHeight(), layout.panelsAcross(), layout.panelsDown(),
+                layout.serpentine(), layout.rotation(), layout.mirrorX(), layout.mirrorY(),
+                addrLines, lanes, brightness, fpsCap);
+        if (handle == 0) throw new RuntimeException("No s'ha pogut obrir Piomatter (" + layout + ")");
     }
+    @Override
     public void close() { if (handle != 0) { nativeClose(handle); handle = 0; } }
+    @Override
     public void setBrightness(int v) { if (nativeSetBrightness(handle, v) != 0) throw new RuntimeException("setBrightness failed"); }
+    @Override
+    public void setGamma(double gamma) {
+        if (!(gamma >= 0.25 && gamma <= 4.0)) throw new IllegalArgumentException("Gamma fora de rang: " + gamma);
+        if (nativeSetGamma(handle, (int) Math.round(gamma * 100)) != 0) throw new RuntimeException("setGamma failed");
+    }
+    @Override
     public void swap() { if (nativeSwap(handle) != 0) throw new RuntimeException("swap failed"); }
+    @Override
     public FB mapFramebuffer() { return nativeMapFramebuffer(handle); }
+    @Override
     public void putPixel(int x, int y, int r, int g, int b) {
         if (nativePutPixel(handle, x, y, r, g, b) != 0) throw new RuntimeException("putPixel failed");
     }
 
-    public static void flushBlack(PioMatter pm, PioMatter.FB fb, int frames, int delayMs) throws InterruptedException {
+    public static void flushBlack(MatrixBackend pm, PioMatter.FB fb, int frames, int delayMs) throws InterruptedException {
         int total = fb.height * fb.strideBytes;
         for (int i = 0; i < total; i++) fb.data.put(i, (byte) 0);
         for (int i = 0; i < frames; i++) { pm.swap(); Thread.sleep(delayMs); }
     }
 
+    /**
+     * Copies a back-buffer into the RGB888 framebuffer applying software brightness.
+     * Delegates to {@link UtilsRGB888#copy} (bulk rows + brightness LUT). The backend already
+     * applies its own brightness at swap: pass 255 unless an extra dimming is wanted.
+     */
     public static void copyBufferedImageToRGB888(BufferedImage src, ByteBuffer dstFB, int stride, int width, int height, int brightness) {
-        final int b = Math.max(0, Math.min(255, brightness));
-        for (int y = 0; y < height; y++) {
-            int rowOff = y * stride;
-            for (int x = 0; x < width; x++) {
-                int rgb = src.getRGB(x, y); // 0xFFRRGGBB (INT_RGB)
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8)  & 0xFF;
-                int bl= (rgb)       & 0xFF;
-
-                if (b != 255) {
-                    r = (r * b) / 255;
-                    g = (g * b) / 255;
-                    bl= (bl* b) / 255;
-                }
-
-                int off = rowOff + x * 3;
-                dstFB.put(off,   (byte) r);
-                dstFB.put(off+1, (byte) g);
-                dstFB.put(off+2, (byte) bl);
-            }
-        }
+        UtilsRGB888.copy(src, dstFB, stride, width, height, brightness);
     }
 }
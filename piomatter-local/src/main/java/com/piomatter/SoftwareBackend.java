@@ -0,0 +1,175 @@
+package com.piomatter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pure-Java, in-memory panel with the same {@link PioMatter.FB} / {@code swap()} contract
+ * as the JNI backend. Needs no Pi5 hardware, so render loops can be profiled on any machine.
+ *
+ * Each {@link #swap()} copies the back framebuffer into a front buffer through the
+ * brightness/gamma table (as the native swap does before {@code show()}), and records a
+ * timestamp and the swap latency. The last {@code keepFrames} presented frames (with the
+ * table applied) are kept in a ring for inspection.
+ */
+public final class SoftwareBackend implements MatrixBackend {
+
+    private final PioMatter.FB fb;
+    private final byte[] front;
+    private volatile int brightness;
+    private volatile double gamma = 1.0;
+    private volatile byte[] lut;   // null = identity
+    private volatile boolean closed = false;
+
+    // Recorded frames (ring)
+    private final byte[][] frames;
+    private final long[] frameTimesNs;
+
+    // Swap statistics
+    private long frameCount = 0L;
+    private long firstSwapNs = 0L;
+    private long lastSwapAtNs = 0L;
+    private long lastSwapNs = 0L;
+    private long totalSwapNs = 0L;
+    private long maxSwapNs = 0L;
+
+    /**
+     * Creates a software panel that keeps the last 8 frames.
+     *
+     * @param w          width in pixels
+     * @param h          height in pixels
+     * @param brightness 0..255, applied at every swap
+     */
+    public SoftwareBackend(int w, int h, int brightness) {
+        this(w, h, brightness, 8);
+    }
+
+    /**
+     * Creates a software panel.
+     *
+     * @param w          width in pixels
+     * @param h          height in pixels
+     * @param brightness 0..255, applied at every swap
+     * @param keepFrames presented frames kept in memory (0 = none)
+     */
+    public SoftwareBackend(int w, int h, int brightness, int keepFrames) {
+        if (w <= 0 || h <= 0) throw new IllegalArgumentException("Mida de panell invàlida: " + w + "x" + h);
+        int stride = w * 3;
+        this.fb = new PioMatter.FB(ByteBuffer.allocateDirect(h * stride), w, h, stride, 24);
+        this.front = new byte[h * stride];
+        this.brightness = clamp(brightness);
+        this.lut = buildLut(this.brightness, gamma);
+        int keep = Math.max(0, keepFrames);
+        this.frames = new byte[keep][];
+        this.frameTimesNs = new long[keep];
+    }
+
+    @Override
+    public void close() { closed = true; }
+
+    @Override
+    public void setBrightness(int v) {
+        if (closed) throw new RuntimeException("setBrightness failed");
+        brightness = clamp(v);
+        lut = buildLut(brightness, gamma);
+    }
+
+    @Override
+    public void setGamma(double g) {
+        if (closed) throw new RuntimeException("setGamma failed");
+        if (!(g >= 0.25 && g <= 4.0)) throw new IllegalArgumentException("Gamma fora de rang: " + g);
+        gamma = g;
+        lut = buildLut(brightness, gamma);
+    }
+
+    @Override
+    public synchronized void swap() {
+        if (closed) throw new RuntimeException("swap failed");
+        long t0 = System.nanoTime();
+        fb.data.get(0, front);
+        byte[] t = lut;
+        if (t != null) {
+            for (int i = 0; i < front.length; i++) front[i] = t[front[i] & 0xFF];
+        }
+        if (frames.length > 0) {
+            int slot = (int) (frameCount % frames.length);
+            if (frames[slot] == null) frames[slot] = new byte[front.length];
+            System.arraycopy(front, 0, frames[slot], 0, front.length);
+            frameTimesNs[slot] = t0;
+        }
+        long dt = System.nanoTime() - t0;
+
+        if (frameCount == 0) firstSwapNs = t0;
+        frameCount++;
+        lastSwapAtNs = t0;
+        lastSwapNs = dt;
+        totalSwapNs += dt;
+        if (dt > maxSwapNs) maxSwapNs = dt;
+    }
+
+    @Override
+    public PioMatter.FB mapFramebuffer() { return fb; }
+
+    @Override
+    public void putPixel(int x, int y, int r, int g, int b) {
+        if (x < 0 || y < 0 || x >= fb.width || y >= fb.height) throw new RuntimeException("putPixel failed");
+        int off = y * fb.strideBytes + x * 3;
+        fb.data.put(off, (byte) r);
+        fb.data.put(off + 1, (byte) g);
+        fb.data.put(off + 2, (byte) b);
+    }
+
+    /** @return the brightness last set */
+    public int getBrightness() { return brightness; }
+
+    /** @return number of frames presented so far */
+    public synchronized long getFrameCount() { return frameCount; }
+
+    /** @return latency of the last swap in nanoseconds */
+    public synchronized long getLastSwapNs() { return lastSwapNs; }
+
+    /** @return mean swap latency in nanoseconds (0 before the first swap) */
+    public synchronized long getAvgSwapNs() { return frameCount == 0 ? 0L : totalSwapNs / frameCount; }
+
+    /** @return worst swap latency in nanoseconds */
+    public synchronized long getMaxSwapNs() { return maxSwapNs; }
+
+    /** @return average presented frames per second between the first and last swap */
+    public synchronized double getPresentedFps() {
+        if (frameCount < 2) return 0.0;
+        return (frameCount - 1) * 1_000_000_000.0 / Math.max(1L, lastSwapAtNs - firstSwapNs);
+    }
+
+    /**
+     * Returns a copy of a recorded frame.
+     *
+     * @param age 0 = last presented frame, 1 = the one before, ...
+     * @return RGB888 bytes ({@code height * strideBytes}) or null if not recorded
+     */
+    public synchronized byte[] frame(int age) {
+        if (age < 0 || age >= frames.length || age >= frameCount) return null;
+        int slot = (int) ((frameCount - 1 - age) % frames.length);
+        return frames[slot].clone();
+    }
+
+    /**
+     * @param age 0 = last presented frame, 1 = the one before, ...
+     * @return {@link System#nanoTime()} of that swap, or -1 if not recorded
+     */
+    public synchronized long frameTimeNs(int age) {
+        if (age < 0 || age >= frames.length || age >= frameCount) return -1L;
+        return frameTimesNs[(int) ((frameCount - 1 - age) % frames.length)];
+    }
+
+    /** @return one-line summary of the swap statistics */
+    public synchronized String summary() {
+        return String.format("[soft] frames=%d fps=%.1f swap avg=%.1fus max=%.1fus",
+                frameCount, getPresentedFps(), getAvgSwapNs() / 1000.0, maxSwapNs / 1000.0);
+    }
+
+    /** @return the tone table, or null if it is the identity (full brightness, linear) */
+    private static byte[] buildLut(int brightness, double gamma) {
+        return (brightness == 255 && gamma == 1.0) ? null : UtilsRGB888.toneLut(brightness, gamma);
+    }
+
+    private static int clamp(int v) { return Math.max(0, Math.min(255, v)); }
+}
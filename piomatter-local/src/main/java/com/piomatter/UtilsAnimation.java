@@ -0,0 +1,350 @@
+package com.piomatter;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+
+import org.w3c.dom.Node;
+
+/**
+ * Decoder for animated GIF and APNG files.
+ *
+ * Every frame is composited onto a full-size ARGB canvas following the format's disposal
+ * and blending rules, so the sink always receives the complete picture to show, ready to
+ * be fitted to a panel. The canvas is reused between frames: the sink must copy what it
+ * needs before returning.
+ *
+ * Frame delays of 10 ms or less are played at 100 ms, as browsers do.
+ */
+public final class UtilsAnimation {
+
+    /** Receives each composited frame in display order. */
+    @FunctionalInterface
+    public interface FrameSink {
+        /**
+         * @param canvas  full-size frame (TYPE_INT_ARGB), only valid during the call
+         * @param delayMs how long the frame stays on screen
+         */
+        void accept(BufferedImage canvas, int delayMs);
+    }
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int DEFAULT_DELAY_MS = 100;
+
+    // APNG chunk types
+    private static final int IHDR = fourcc("IHDR"), IDAT = fourcc("IDAT"), IEND = fourcc("IEND");
+    private static final int ACTL = fourcc("acTL"), FCTL = fourcc("fcTL"), FDAT = fourcc("fdAT");
+
+    private UtilsAnimation() {}
+
+    /**
+     * Tells whether the data is a GIF or APNG with more than one frame.
+     * Does not change the position of {@code data}.
+     *
+     * @param data image file bytes
+     * @return true for animated GIF/APNG, false for stills and other formats
+     */
+    public static boolean isAnimated(ByteBuffer data) {
+        ByteBuffer b = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (isGif(b)) {
+            try {
+                return gifFrameCount(b) > 1;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return isPng(b) && apngFrameCount(b) > 1;
+    }
+
+    /**
+     * Decodes an animated GIF/APNG frame by frame.
+     * Does not change the position of {@code data}.
+     *
+     * @param data      image file bytes
+     * @param maxFrames frames to decode at most (the rest are ignored)
+     * @param sink      receives each composited frame
+     * @return frames delivered to the sink, or -1 if the data is not an animated GIF/APNG
+     * @throws IOException if the file is corrupt
+     */
+    public static int decode(ByteBuffer data, int maxFrames, FrameSink sink) throws IOException {
+        if (!isAnimated(data)) return -1;
+        ByteBuffer b = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+        return isGif(b) ? decodeGif(b, maxFrames, sink) : decodeApng(b, maxFrames, sink);
+    }
+
+    // ───────────────────────────── GIF ─────────────────────────────
+
+    private static boolean isGif(ByteBuffer b) {
+        int p = b.position();
+        return b.remaining() >= 6 && b.get(p) == 'G' && b.get(p + 1) == 'I' && b.get(p + 2) == 'F' && b.get(p + 3) == '8';
+    }
+
+    private static int gifFrameCount(ByteBuffer b) throws IOException {
+        ImageReader reader = gifReader();
+        try (ImageInputStream in = ImageIO.createImageInputStream(stream(b))) {
+            reader.setInput(in, false, true);
+            return reader.getNumImages(true);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private static int decodeGif(ByteBuffer b, int maxFrames, FrameSink sink) throws IOException {
+        ImageReader reader = gifReader();
+        try (ImageInputStream in = ImageIO.createImageInputStream(stream(b))) {
+            reader.setInput(in, false, false);
+            Node screen = child(reader.getStreamMetadata().getAsTree("javax_imageio_gif_stream_1.0"), "LogicalScreenDescriptor");
+            int w = intAttr(screen, "logicalScreenWidth", 0);
+            int h = intAttr(screen, "logicalScreenHeight", 0);
+            if (w <= 0 || h <= 0) {
+                w = reader.getWidth(0);
+                h = reader.getHeight(0);
+            }
+
+            BufferedImage canvas = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = canvas.createGraphics();
+            int[] saved = null;
+            int n = 0;
+            try {
+                for (int i = 0; n < maxFrames; i++) {
+                    BufferedImage frame;
+                    IIOMetadata meta;
+                    try {
+                        frame = reader.read(i);
+                        meta = reader.getImageMetadata(i);
+                    } catch (IndexOutOfBoundsException end) {
+                        break;
+                    }
+                    Node root = meta.getAsTree("javax_imageio_gif_image_1.0");
+                    Node desc = child(root, "ImageDescriptor");
+                    Node gce = child(root, "GraphicControlExtension");
+                    int fx = intAttr(desc, "imageLeftPosition", 0), fy = intAttr(desc, "imageTopPosition", 0);
+                    String disposal = (gce == null) ? "none" : attr(gce, "disposalMethod", "none");
+                    int delayMs = intAttr(gce, "delayTime", 0) * 10;
+
+                    if (disposal.equals("restoreToPrevious")) saved = pixels(canvas, saved);
+
+                    g.setComposite(AlphaComposite.SrcOver);
+                    g.drawImage(frame, fx, fy, null);
+                    sink.accept(canvas, normalizeDelay(delayMs));
+                    n++;
+
+                    // Disposal applies before the next frame is drawn
+                    if (disposal.equals("restoreToBackgroundColor")) {
+                        clear(g, fx, fy, frame.getWidth(), frame.getHeight());
+                    } else if (disposal.equals("restoreToPrevious") && saved != null) {
+                        canvas.setRGB(0, 0, w, h, saved, 0, w);
+                    }
+                }
+            } finally {
+                g.dispose();
+            }
+            return n;
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private static ImageReader gifReader() throws IOException {
+        Iterator<ImageReader> it = ImageIO.getImageReadersByFormatName("gif");
+        if (!it.hasNext()) throw new IOException("No GIF reader available");
+        return it.next();
+    }
+
+    private static Node child(Node parent, String name) {
+        if (parent == null) return null;
+        for (Node c = parent.getFirstChild(); c != null; c = c.getNextSibling()) {
+            if (name.equals(c.getNodeName())) return c;
+        }
+        return null;
+    }
+
+    private static String attr(Node node, String name, String def) {
+        if (node == null || node.getAttributes() == null) return def;
+        Node a = node.getAttributes().getNamedItem(name);
+        return (a == null) ? def : a.getNodeValue();
+    }
+
+    private static int intAttr(Node node, String name, int def) {
+        try {
+            return Integer.parseInt(attr(node, name, Integer.toString(def)));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    // ───────────────────────────── APNG ─────────────────────────────
+
+    private static boolean isPng(ByteBuffer b) {
+        if (b.remaining() < PNG_SIGNATURE.length) return false;
+        for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (b.get(b.position() + i) != PNG_SIGNATURE[i]) return false;
+        }
+        return true;
+    }
+
+    /** @return frames announced by acTL (before IDAT), or 0 for a plain PNG */
+    private static int apngFrameCount(ByteBuffer b) {
+        int p = b.position() + PNG_SIGNATURE.length;
+        while (p + 8 <= b.limit()) {
+            int len = b.getInt(p), type = b.getInt(p + 4);
+            if (len < 0 || p + 12L + len > b.limit()) return 0;
+            if (type == ACTL && len >= 8) return b.getInt(p + 8);
+            if (type == IDAT || type == IEND) return 0;
+            p += 12 + len;
+        }
+        return 0;
+    }
+
+    /** Frame control (fcTL) of the frame being assembled. */
+    private record FrameControl(int w, int h, int x, int y, int delayMs, int dispose, int blend) {
+
+        static FrameControl read(ByteBuffer b, int p) {
+            int num = Short.toUnsignedInt(b.getShort(p + 20));
+            int den = Short.toUnsignedInt(b.getShort(p + 22));
+            return new FrameControl(b.getInt(p + 4), b.getInt(p + 8), b.getInt(p + 12), b.getInt(p + 16),
+                    (int) (num * 1000L / (den == 0 ? 100 : den)), b.get(p + 24), b.get(p + 25));
+        }
+    }
+
+    private static int decodeApng(ByteBuffer b, int maxFrames, FrameSink sink) throws IOException {
+        int w = 0, h = 0;
+        ByteArrayOutputStream header = new ByteArrayOutputStream(); // chunks shared by every frame (PLTE, tRNS...)
+        ByteArrayOutputStream body = new ByteArrayOutputStream();   // image data of the current frame
+        byte[] ihdr = null;
+        FrameControl fc = null;
+        boolean seenIdat = false;
+
+        BufferedImage canvas = null;
+        Graphics2D g = null;
+        int[] saved = null;
+        int n = 0;
+        try {
+            int p = b.position() + PNG_SIGNATURE.length;
+            while (p + 8 <= b.limit() && n < maxFrames) {
+                int len = b.getInt(p), type = b.getInt(p + 4);
+                if (len < 0 || p + 12L + len > b.limit()) throw new IOException("Truncated PNG chunk");
+                int data = p + 8;
+
+                if (type == IHDR) {
+                    ihdr = bytes(b, data, len);
+                    w = b.getInt(data);
+                    h = b.getInt(data + 4);
+                    canvas = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+                    g = canvas.createGraphics();
+                } else if (type == FCTL || type == IEND) {
+                    if (fc != null && body.size() > 0) {
+                        // Previous frame is complete: decode and composite it
+                        if (g == null) throw new IOException("PNG without IHDR");
+                        BufferedImage frame = ImageIO.read(new ByteArrayInputStream(framePng(ihdr, fc, header, body)));
+                        if (frame == null) throw new IOException("Unreadable APNG frame " + n);
+                        int dispose = (n == 0 && fc.dispose == 2) ? 1 : fc.dispose;
+                        if (dispose == 2) saved = pixels(canvas, saved);
+
+                        if (fc.blend == 0) {
+                            clear(g, fc.x, fc.y, fc.w, fc.h);
+                        }
+                        g.setComposite(AlphaComposite.SrcOver);
+                        g.drawImage(frame, fc.x, fc.y, null);
+                        sink.accept(canvas, normalizeDelay(fc.delayMs));
+                        n++;
+
+                        if (dispose == 1) {
+                            clear(g, fc.x, fc.y, fc.w, fc.h);
+                        } else if (dispose == 2 && saved != null) {
+                            canvas.setRGB(0, 0, w, h, saved, 0, w);
+                        }
+                    }
+                    body.reset();
+                    fc = (type == FCTL && len >= 26) ? FrameControl.read(b, data) : null;
+                    if (type == IEND) break;
+                } else if (type == IDAT) {
+                    seenIdat = true;
+                    if (fc != null) body.write(bytes(b, data, len)); // default image is a frame only after fcTL
+                } else if (type == FDAT) {
+                    if (fc != null && len > 4) body.write(bytes(b, data + 4, len - 4)); // drop sequence number
+                } else if (type != ACTL && !seenIdat) {
+                    header.write(bytes(b, p, len + 12)); // ancillary chunk, copied as is
+                }
+                p += 12 + len;
+            }
+        } finally {
+            if (g != null) g.dispose();
+        }
+        return n;
+    }
+
+    /** Builds a standalone PNG for one frame: IHDR with the frame size + shared chunks + IDAT + IEND. */
+    private static byte[] framePng(byte[] ihdr, FrameControl fc, ByteArrayOutputStream header,
+                                   ByteArrayOutputStream body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.size() + header.size() + 64);
+        out.write(PNG_SIGNATURE);
+        byte[] frameIhdr = ihdr.clone();
+        ByteBuffer.wrap(frameIhdr).putInt(0, fc.w).putInt(4, fc.h);
+        writeChunk(out, IHDR, frameIhdr);
+        header.writeTo(out);
+        writeChunk(out, IDAT, body.toByteArray());
+        writeChunk(out, IEND, new byte[0]);
+        return out.toByteArray();
+    }
+
+    private static void writeChunk(ByteArrayOutputStream out, int type, byte[] data) {
+        ByteBuffer head = ByteBuffer.allocate(8).putInt(data.length).putInt(type);
+        out.write(head.array(), 0, 8);
+        out.write(data, 0, data.length);
+        CRC32 crc = new CRC32();
+        crc.update(head.array(), 4, 4);
+        crc.update(data);
+        ByteBuffer tail = ByteBuffer.allocate(4).putInt((int) crc.getValue());
+        out.write(tail.array(), 0, 4);
+    }
+
+    private static int fourcc(String s) {
+        return (s.charAt(0) << 24) | (s.charAt(1) << 16) | (s.charAt(2) << 8) | s.charAt(3);
+    }
+
+    // ───────────────────────────── Shared helpers ─────────────────────────────
+
+    private static int normalizeDelay(int delayMs) {
+        return delayMs <= 10 ? DEFAULT_DELAY_MS : delayMs;
+    }
+
+    /** Makes a region of the canvas fully transparent. */
+    private static void clear(Graphics2D g, int x, int y, int w, int h) {
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(x, y, w, h);
+    }
+
+    /** Snapshot of the whole canvas (reusing {@code into} when it fits). */
+    private static int[] pixels(BufferedImage canvas, int[] into) {
+        int w = canvas.getWidth(), h = canvas.getHeight();
+        if (into == null || into.length != w * h) into = new int[w * h];
+        return canvas.getRGB(0, 0, w, h, into, 0, w);
+    }
+
+    private static byte[] bytes(ByteBuffer b, int from, int len) {
+        byte[] out = new byte[len];
+        b.get(from, out);
+        return out;
+    }
+
+    private static InputStream stream(ByteBuffer b) {
+        if (b.hasArray()) return new ByteArrayInputStream(b.array(), b.arrayOffset() + b.position(), b.remaining());
+        byte[] copy = new byte[b.remaining()];
+        b.get(b.position(), copy);
+        return new ByteArrayInputStream(copy);
+    }
+}
@@ -1,19 +1,54 @@
 package com.piomatter;
 
 import java.awt.*;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Simple FPS helper with smoothed FPS (EMA), frame duration, optional FPS capping,
  * and a tiny overlay drawer for on-screen diagnostics.
+ *
+ * Two ways to cap the frame rate:
+ * - {@link #endFrameAndCap(int)} sleeps whatever is left of the period after the work.
+ *   Any sleep overshoot is lost, so the real rate sits a little below the cap.
+ * - {@link #endFrameAndPace(int)} keeps an absolute deadline grid ({@code next = previous +
+ *   period}). It sleeps coarsely until shortly before the deadline and spins
+ *   ({@link Thread#onSpinWait()}) for the last stretch, so overshoot never accumulates.
+ *   Deadlines that the work alone already missed are counted and skipped (no catch-up burst).
+ *   A return forced earlier by {@link #wakeBy(long)} is not a frame: the grid slot is still
+ *   open, so it is neither counted nor fed to the FPS average (see {@link #lastWokeEarly()}).
  */
 public class UtilsFPS {
 
+    /** Overlay font, created once (not per frame). */
+    private static final Font OVERLAY_FONT = new Font("SansSerif", Font.PLAIN, 10);
+
     /** Exponential moving average smoothing factor (0..1). Higher = faster response. */
     private final double alpha;
     private long frameStartNs = 0L;
     private long lastFrameDurationNs = 0L;   // nanoseconds of the last completed frame
     private double emaFps = -1.0;            // smoothed FPS (EMA), -1 indicates uninitialized
 
+    /** Default stretch before a deadline that is spun instead of slept (covers sleep overshoot). */
+    public static final long DEFAULT_SPIN_NS = 1_000_000L;
+
+    // Deadline pacing (endFrameAndPace)
+    private long spinNs = DEFAULT_SPIN_NS;
+    private long pacePeriodNs = 0L;          // period of the current grid (0 = not started)
+    private long nextDeadlineNs = 0L;
+    private long wakeByNs = Long.MAX_VALUE;  // one-shot earlier wake-up (wakeBy)
+    private long lastSleepNs = 0L;           // measured, not requested
+    private long pacedFrames = 0L, missedDeadlines = 0L, earlyWakes = 0L;
+    private long totalLateNs = 0L, maxLateNs = 0L;   // wake-up after the deadline
+    private long maxMissNs = 0L;                     // work that ran past the deadline
+    private boolean lastMissed = false;
+    private boolean lastEarly = false;       // last endFrameAndPace returned at wakeBy, slot still open
+
+    // Overlay text, rebuilt only when the displayed value (tenths of FPS) changes
+    private final StringBuilder overlayText = new StringBuilder(16);
+    private String overlayString = "";
+    private long overlayTenths = Long.MIN_VALUE;
+    private long overlayStringTenths = Long.MIN_VALUE;
+
     /**
      * Creates an FPS helper with default smoothing (alpha = 0.12).
      */
@@ -88,38 +123,203 @@ public class UtilsFPS {
     }
 
     /**
-     * Draws a tiny diagnostic overlay showing FPS and frame time (ms).
+     * Sets how long before a deadline {@link #endFrameAndPace} stops sleeping and starts
+     * spinning. Larger values cost CPU but absorb worse sleep overshoot; 0 = sleep only.
+     *
+     * @param ns spin stretch in nanoseconds
+     */
+    public void setSpinNs(long ns) {
+        spinNs = Math.max(0L, ns);
+    }
+
+    /**
+     * Asks the next {@link #endFrameAndPace} to return no later than {@code deadlineNs}
+     * (e.g. when a frame is due before the next grid slot). One-shot; the grid is unchanged.
+     * If it does return early, {@link #lastWokeEarly()} is true and the frame is not counted.
+     *
+     * @param deadlineNs absolute {@link System#nanoTime()} deadline
+     */
+    public void wakeBy(long deadlineNs) {
+        wakeByNs = Math.min(wakeByNs, deadlineNs);
+    }
+
+    /**
+     * Ends the frame and waits for the next deadline of an absolute grid of period
+     * {@code 1 / fpsCap}: coarse sleep, then spin until the deadline. The reported FPS
+     * uses the measured frame time (work + actual wait).
+     *
+     * If a {@link #wakeBy} deadline ends the wait before the grid deadline, the frame is not
+     * finished: nothing is counted and the FPS average is unchanged. The caller should then
+     * skip the next {@link #beginFrame()}, so that the next call measures the whole slot.
+     *
+     * @param fpsCap target FPS; if <= 0, does not wait (and resets the grid)
+     * @return total frame duration in nanoseconds (work + wait), or the time so far on an early wake
+     */
+    public long endFrameAndPace(int fpsCap) {
+        long now = System.nanoTime();
+        long wakeBy = wakeByNs;
+        wakeByNs = Long.MAX_VALUE;
+
+        lastMissed = false;
+        lastEarly = false;
+        if (fpsCap <= 0) {
+            pacePeriodNs = 0L;
+            lastSleepNs = 0L;
+            return record(now - frameStartNs);
+        }
+
+        long period = 1_000_000_000L / fpsCap;
+        if (period != pacePeriodNs) {
+            // New grid, anchored to the start of this frame
+            pacePeriodNs = period;
+            nextDeadlineNs = frameStartNs + period;
+        }
+
+        if (now - nextDeadlineNs > 0) {
+            // The work alone missed the deadline: skip the slots already gone (no burst)
+            missedDeadlines++;
+            lastMissed = true;
+            long late = now - nextDeadlineNs;
+            if (late > maxMissNs) maxMissNs = late;
+            nextDeadlineNs += (late / period + 1) * period;
+        }
+
+        long target = (wakeBy - nextDeadlineNs < 0) ? wakeBy : nextDeadlineNs;
+        long waitStart = now;
+        if (target - now > 0) {
+            long coarse = target - now - spinNs;
+            if (coarse > 0) LockSupport.parkNanos(coarse);
+            while ((now = System.nanoTime()) - target < 0) Thread.onSpinWait();
+            long late = now - target;
+            totalLateNs += late;
+            if (late > maxLateNs) maxLateNs = late;
+        }
+        lastSleepNs = now - waitStart;
+        if (target != nextDeadlineNs && !lastMissed) {
+            // Woken by wakeBy before the slot ends: same frame, not a paced one
+            lastEarly = true;
+            earlyWakes++;
+            return now - frameStartNs;
+        }
+        if (target == nextDeadlineNs) nextDeadlineNs += period;
+        pacedFrames++;
+
+        return record(now - frameStartNs);
+    }
+
+    /** @return measured wait of the last {@link #endFrameAndPace} / {@link #endFrameAndCap}, in ns */
+    public long getLastSleepNs() { return lastSleepNs; }
+
+    /** @return frames paced with {@link #endFrameAndPace} */
+    public long getPacedFrames() { return pacedFrames; }
+
+    /** @return paced frames whose work alone ran past the deadline */
+    public long getMissedDeadlines() { return missedDeadlines; }
+
+    /** @return true if the work of the last paced frame ran past its deadline (a dropped frame) */
+    public boolean lastFrameMissed() { return lastMissed; }
+
+    /**
+     * @return true if the last {@link #endFrameAndPace} returned at a {@link #wakeBy} deadline
+     *         before the grid slot ended: the frame is still open and was not counted
+     */
+    public boolean lastWokeEarly() { return lastEarly; }
+
+    /** @return returns forced by {@link #wakeBy} before the grid deadline (not counted as frames) */
+    public long getEarlyWakes() { return earlyWakes; }
+
+    /** @return worst wake-up delay after a deadline, in ns (sleep/spin precision) */
+    public long getMaxLateNs() { return maxLateNs; }
+
+    /** @return one-line summary of the pacing statistics */
+    public String pacingSummary() {
+        long waited = Math.max(1L, pacedFrames - missedDeadlines + earlyWakes);
+        return String.format("[fps] paced=%d missed=%d (worst %.2fms) early=%d wake late avg=%.1fus max=%.1fus",
+                pacedFrames, missedDeadlines, maxMissNs / 1e6, earlyWakes, totalLateNs / 1e3 / waited,
+                maxLateNs / 1e3);
+    }
+
+    /** Stores the frame duration and updates the EMA. */
+    private long record(long totalNs) {
+        lastFrameDurationNs = Math.max(1L, totalNs);
+        double instFps = 1_000_000_000.0 / lastFrameDurationNs;
+        emaFps = (emaFps < 0.0) ? instFps : (alpha * instFps + (1.0 - alpha) * emaFps);
+        return lastFrameDurationNs;
+    }
+
+    /**
+     * Draws a tiny diagnostic overlay showing FPS.
      *
      * @param g  graphics context (already configured for your back-buffer)
      * @param x  left position
      * @param y  baseline Y
      */
     public void drawOverlay(Graphics2D g, int x, int y) {
-        String text = String.format("FPS: %.1f", getFPS(), getFrameMs());
+        updateOverlayText();
+        if (overlayStringTenths != overlayTenths) {
+            overlayString = overlayText.toString();
+            overlayStringTenths = overlayTenths;
+        }
         Color prevColor = g.getColor();
         Font prevFont = g.getFont();
 
-        g.setFont(new Font("SansSerif", Font.PLAIN, 10));
+        g.setFont(OVERLAY_FONT);
         // soft shadow for readability on LED matrices
         g.setColor(Color.BLACK);
-        g.drawString(text, x + 1, y + 1);
+        g.drawString(overlayString, x + 1, y + 1);
         g.setColor(Color.WHITE);
-        g.drawString(text, x, y);
+        g.drawString(overlayString, x, y);
 
         g.setFont(prevFont);
         g.setColor(prevColor);
     }
 
+    /**
+     * Draws the FPS overlay straight into a packed-RGB back-buffer through a
+     * {@link GlyphAtlas}: no Java2D calls and no allocation per frame.
+     *
+     * @param dst    pixels, row-major, {@code width} ints per row
+     * @param width  buffer width
+     * @param height rows that may be touched (the overlay is clipped to {@code [0, height)})
+     * @param x      left position
+     * @param y      baseline Y
+     */
+    public void drawOverlay(int[] dst, int width, int height, int x, int y) {
+        updateOverlayText();
+        GlyphAtlas atlas = GlyphAtlas.of(OVERLAY_FONT);
+        int n = overlayText.length();
+        // soft shadow for readability on LED matrices
+        atlas.drawString(dst, width, 0, 0, width, height, overlayText, 0, n, x + 1, y + 1, 0x000000);
+        atlas.drawString(dst, width, 0, 0, width, height, overlayText, 0, n, x, y, 0xFFFFFF);
+    }
+
+    /** Formats "FPS: 12.3" into {@code overlayText} when the value changes. */
+    private void updateOverlayText() {
+        long tenths = Math.round(getFPS() * 10.0);
+        if (tenths == overlayTenths) return;
+        overlayTenths = tenths;
+        overlayText.setLength(0);
+        overlayText.append("FPS: ").append(tenths / 10).append('.').append(tenths % 10);
+    }
+
     /** Resets all statistics. */
     public void reset() {
         frameStartNs = 0L;
         lastFrameDurationNs = 0L;
         emaFps = -1.0;
+        overlayTenths = Long.MIN_VALUE;
+        pacePeriodNs = 0L;
+        wakeByNs = Long.MAX_VALUE;
+        lastSleepNs = 0L;
+        pacedFrames = missedDeadlines = earlyWakes = 0L;
+        lastMissed = lastEarly = false;
+        totalLateNs = maxLateNs = maxMissNs = 0L;
     }
 
     /**
      * Ends the frame and (optionally) sleeps to respect FPS cap.
-     * The reported FPS includes the sleep time (i.e., total frame time).
+     * The reported FPS includes the measured sleep time (i.e., total frame time).
+     * Overshoot is not compensated; see {@link #endFrameAndPace(int)}.
      *
      * @param fpsCap target FPS; if <= 0, does not sleep
      * @return total frame duration in nanoseconds (work + sleep)
@@ -136,15 +336,10 @@ public class UtilsFPS {
                 try {
                     Thread.sleep(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
                 } catch (InterruptedException ignored) {}
-                sleepNs = remaining;
+                sleepNs = System.nanoTime() - now; // real sleep, overshoot included
             }
         }
-
-        long totalNs = workNs + sleepNs;
-        lastFrameDurationNs = totalNs;
-
-        double instFps = 1_000_000_000.0 / totalNs;
-        emaFps = (emaFps < 0.0) ? instFps : (alpha * instFps + (1.0 - alpha) * emaFps);
-        return totalNs;
+        lastSleepNs = sleepNs;
+        return record(workNs + sleepNs);
     }
 }
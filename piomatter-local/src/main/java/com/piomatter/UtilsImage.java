@@ -49,6 +49,32 @@ public class UtilsImage {
         return null;
     }
 
+    /**
+     * Renders an image into a new {@code width x height} TYPE_INT_RGB image over a black
+     * background, using {@link #drawImageFit} with LED-matrix friendly hints
+     * (no antialiasing, nearest-neighbor interpolation).
+     *
+     * @param img     the image to fit
+     * @param width   target width
+     * @param height  target height
+     * @param mode    fitting mode to use ({@link FitMode})
+     * @return a new image ready to be copied 1:1 to a panel of that size
+     */
+    public static BufferedImage fitToSize(BufferedImage img, int width, int height, FitMode mode) {
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, width, height);
+            drawImageFit(g, img, 0, 0, width, height, mode);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
     /**
      * Draws an image inside a destination rectangle according to the specified mode.
      *
@@ -0,0 +1,170 @@
+package com.piomatter;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.nio.ByteBuffer;
+
+/**
+ * Bulk conversion helpers from Java2D images to the packed RGB888 framebuffer.
+ *
+ * Pure Java (no JNI), so it can be used and verified on any machine.
+ * Brightness is applied through a precomputed 256-entry lookup table per level
+ * instead of a multiply/divide per channel.
+ */
+public final class UtilsRGB888 {
+
+    /**
+     * Lookup tables, one per brightness level (0..255), all built at class initialization
+     * (64 KiB) so that every thread sees them fully written.
+     */
+    private static final byte[][] LUTS = new byte[256][256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            for (int v = 0; v < 256; v++) {
+                LUTS[b][v] = (byte) (b == 255 ? v : (v * b) / 255);
+            }
+        }
+    }
+
+    /** Per-thread scratch rows for {@link #copyRows}, grown on demand. */
+    private static final class Scratch {
+        byte[] row = new byte[0];
+        int[] line = new int[0];
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private UtilsRGB888() {}
+
+    /**
+     * Returns the lookup table for a brightness level: {@code lut[v] = (v * b) / 255}.
+     * The table is shared between threads and must not be modified.
+     *
+     * @param brightness brightness level, clamped to 0..255
+     * @return 256-entry table mapping a channel value to its scaled value
+     */
+    public static byte[] brightnessLut(int brightness) {
+        return LUTS[Math.max(0, Math.min(255, brightness))];
+    }
+
+    /**
+     * Returns a brightness + gamma table: {@code lut[v] = 255 * (v / 255)^gamma * b / 255},
+     * rounded. With {@code gamma == 1} it is exactly {@link #brightnessLut(int)}. Same formula
+     * as the native backend, which applies it at every swap.
+     *
+     * @param brightness brightness level, clamped to 0..255
+     * @param gamma      curve exponent (1 = linear)
+     * @return a new 256-entry table
+     */
+    public static byte[] toneLut(int brightness, double gamma) {
+        if (gamma == 1.0) return brightnessLut(brightness).clone();
+        final int b = Math.max(0, Math.min(255, brightness));
+        byte[] lut = new byte[256];
+        for (int v = 0; v < 256; v++) {
+            lut[v] = (byte) Math.max(0, Math.min(255, (int) Math.round(Math.pow(v / 255.0, gamma) * b)));
+        }
+        return lut;
+    }
+
+    /**
+     * Copies {@code width x height} pixels of {@code src} into an RGB888 framebuffer.
+     * Produces exactly the same bytes as a per-pixel {@code getRGB} + {@code put} loop.
+     *
+     * @param src        source image (fast path for TYPE_INT_RGB / TYPE_INT_ARGB)
+     * @param dstFB      destination framebuffer
+     * @param stride     bytes per framebuffer row
+     * @param width      pixels per row to copy
+     * @param height     rows to copy
+     * @param brightness 0..255
+     */
+    public static void copy(BufferedImage src, ByteBuffer dstFB, int stride, int width, int height, int brightness) {
+        copyRows(src, dstFB, stride, width, 0, height, brightness);
+    }
+
+    /**
+     * Copies rows {@code [y0, y1)} of {@code src} into an RGB888 framebuffer.
+     *
+     * @param src        source image
+     * @param dstFB      destination framebuffer
+     * @param stride     bytes per framebuffer row
+     * @param width      pixels per row to copy
+     * @param y0         first row (inclusive)
+     * @param y1         last row (exclusive)
+     * @param brightness 0..255
+     */
+    public static void copyRows(BufferedImage src, ByteBuffer dstFB, int stride, int width,
+                                int y0, int y1, int brightness) {
+        if (y1 <= y0 || width <= 0) return;
+        final byte[] lut = brightnessLut(brightness);
+        final Scratch scratch = SCRATCH.get();
+        if (scratch.row.length < width * 3) scratch.row = new byte[width * 3];
+        final byte[] row = scratch.row;
+        final int rowBytes = width * 3;
+
+        int[] pixels = intPixels(src);
+        if (pixels != null) {
+            int scan = scanlineStride(src);
+            int base = pixelBase(src);
+            for (int y = y0; y < y1; y++) {
+                packRow(pixels, base + y * scan, row, width, lut);
+                dstFB.put(y * stride, row, 0, rowBytes);
+            }
+        } else {
+            // Generic path: one getRGB call per row instead of per pixel
+            if (scratch.line.length < width) scratch.line = new int[width];
+            final int[] line = scratch.line;
+            for (int y = y0; y < y1; y++) {
+                src.getRGB(0, y, width, 1, line, 0, width);
+                packRow(line, 0, row, width, lut);
+                dstFB.put(y * stride, row, 0, rowBytes);
+            }
+        }
+    }
+
+    /**
+     * Converts packed 0x??RRGGBB ints to RGB888 bytes through a brightness LUT.
+     *
+     * @param src    source pixels
+     * @param srcOff first pixel index in {@code src}
+     * @param dst    destination bytes (at least {@code width * 3})
+     * @param width  pixels to convert
+     * @param lut    table from {@link #brightnessLut(int)}
+     */
+    public static void packRow(int[] src, int srcOff, byte[] dst, int width, byte[] lut) {
+        for (int x = 0, o = 0; x < width; x++, o += 3) {
+            int rgb = src[srcOff + x];
+            dst[o]     = lut[(rgb >> 16) & 0xFF];
+            dst[o + 1] = lut[(rgb >> 8)  & 0xFF];
+            dst[o + 2] = lut[rgb         & 0xFF];
+        }
+    }
+
+    /**
+     * Returns the backing pixel array when the image stores one packed RGB int per pixel
+     * (so the low 24 bits match {@link BufferedImage#getRGB(int, int)}), otherwise null.
+     */
+    static int[] intPixels(BufferedImage img) {
+        int type = img.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) return null;
+        Raster r = img.getRaster();
+        if (!(r.getDataBuffer() instanceof DataBufferInt db)) return null;
+        if (!(r.getSampleModel() instanceof SinglePixelPackedSampleModel)) return null;
+        return db.getData();
+    }
+
+    /** Ints per row in the array returned by {@link #intPixels}. */
+    static int scanlineStride(BufferedImage img) {
+        return ((SinglePixelPackedSampleModel) img.getRaster().getSampleModel()).getScanlineStride();
+    }
+
+    /** Index of pixel (0, 0) in the array returned by {@link #intPixels} (sub-images are offset). */
+    static int pixelBase(BufferedImage img) {
+        Raster r = img.getRaster();
+        return r.getDataBuffer().getOffset()
+                - r.getSampleModelTranslateY() * scanlineStride(img)
+                - r.getSampleModelTranslateX();
+    }
+}
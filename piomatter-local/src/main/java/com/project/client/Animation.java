@@ -0,0 +1,111 @@
+package com.project.client;
+
+import com.piomatter.UtilsAnimation;
+import com.piomatter.UtilsImage;
+import com.piomatter.UtilsImage.FitMode;
+import com.piomatter.UtilsRGB888;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Animació (GIF/APNG) ja descodificada i ajustada al panell.
+ *
+ * Tots els frames es descodifiquen un sol cop, s'ajusten i es guarden en RGB888 (a escala
+ * completa: la brillantor l'aplica el backend), un darrere l'altre en un únic array que es reprodueix en bucle
+ * (anell). Mostrar un frame és una sola còpia de bytes al framebuffer.
+ *
+ * Quin frame toca depèn només del rellotge i dels retards de cada frame, no del ritme del
+ * render loop. És immutable.
+ */
+final class Animation {
+
+    private final byte[] frames;     // count * frameBytes, RGB888 sense padding
+    private final int frameBytes;
+    private final int rowBytes;
+    private final int[] endMs;       // instant (dins d'una volta) en què acaba cada frame
+    private final long startMs;
+
+    private Animation(byte[] frames, int rowBytes, int frameBytes, int[] endMs, long startMs) {
+        this.frames = frames;
+        this.rowBytes = rowBytes;
+        this.frameBytes = frameBytes;
+        this.endMs = endMs;
+        this.startMs = startMs;
+    }
+
+    /**
+     * Descodifica una animació i l'ajusta al panell.
+     *
+     * @param data       bytes del fitxer (GIF/APNG)
+     * @param width      amplada del panell
+     * @param height     alçada del panell
+     * @param mode       mode d'ajust
+     * @param maxBytes   memòria màxima dels frames (la resta de frames s'ignoren)
+     * @param startMs    instant d'inici ({@link System#currentTimeMillis()})
+     * @return l'animació, o null si les dades no són un GIF/APNG animat
+     * @throws IOException si el fitxer està malmès
+     */
+    static Animation decode(ByteBuffer data, int width, int height, FitMode mode,
+                            long maxBytes, long startMs) throws IOException {
+        final int rowBytes = width * 3;
+        final int frameBytes = rowBytes * height;
+        final int maxFrames = (int) Math.max(1, Math.min(Integer.MAX_VALUE / frameBytes, maxBytes / frameBytes));
+
+        final byte[][] out = {new byte[frameBytes * Math.min(maxFrames, 16)]};
+        final int[][] ends = {new int[Math.min(maxFrames, 16)]};
+        final int[] count = {0};
+        final long[] total = {0L};
+
+        int n = UtilsAnimation.decode(data, maxFrames, (canvas, delayMs) -> {
+            int i = count[0];
+            if (i == ends[0].length) {
+                int cap = Math.min(maxFrames, i * 2);
+                out[0] = Arrays.copyOf(out[0], cap * frameBytes);
+                ends[0] = Arrays.copyOf(ends[0], cap);
+            }
+            UtilsRGB888.copy(UtilsImage.fitToSize(canvas, width, height, mode),
+                    ByteBuffer.wrap(out[0], i * frameBytes, frameBytes).slice(), rowBytes, width, height, 255);
+            total[0] = Math.min(Integer.MAX_VALUE, total[0] + delayMs);
+            ends[0][i] = (int) total[0];
+            count[0] = i + 1;
+        });
+        if (n <= 0) return null;
+
+        return new Animation(Arrays.copyOf(out[0], n * frameBytes), rowBytes, frameBytes,
+                Arrays.copyOf(ends[0], n), startMs);
+    }
+
+    /** @return nombre de frames */
+    int frameCount() { return endMs.length; }
+
+    /** @return durada d'una volta en ms */
+    long durationMs() { return endMs[endMs.length - 1]; }
+
+    /** @return índex del frame que toca mostrar a {@code nowMs} */
+    int frameAt(long nowMs) {
+        long t = Math.floorMod(nowMs - startMs, durationMs());
+        int i = Arrays.binarySearch(endMs, (int) t);
+        // endMs[i] és l'instant en què el frame i deixa pas al següent
+        return (i >= 0) ? i + 1 : -i - 1;
+    }
+
+    /**
+     * Copia un frame al framebuffer.
+     *
+     * @param index       frame ({@link #frameAt})
+     * @param fb          dades del framebuffer
+     * @param strideBytes bytes per fila del framebuffer
+     */
+    void copyFrame(int index, ByteBuffer fb, int strideBytes) {
+        int off = index * frameBytes;
+        if (strideBytes == rowBytes) {
+            fb.put(0, frames, off, frameBytes);
+        } else {
+            for (int y = 0, rows = frameBytes / rowBytes; y < rows; y++) {
+                fb.put(y * strideBytes, frames, off + y * rowBytes, rowBytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.project.client;
+
+import com.piomatter.FrameStats;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Fil de descodificació dels missatges del servidor.
+ *
+ * El fil de lectura de Java-WebSocket només encua el missatge rebut (cua acotada); aquest
+ * fil fa el parseig JSON, el Base64 i l'ImageIO, i publica el resultat com un
+ * {@link DisplayState} immutable en una {@link AtomicReference} que el render loop llegeix.
+ * Així una imatge gran no bloqueja el socket i el render loop mai veu un estat a mitges.
+ *
+ * Si la cua és plena es descarta el missatge més antic: el panell només en mostra un
+ * i el més nou el substituiria igualment. Per això només hi han d'arribar continguts (text,
+ * imatges, frames); els pings i els ajustos s'atenen abans, al fil del socket.
+ *
+ * El temps de cada descodificació es registra a un {@link FrameStats} propi d'aquest fil
+ * (etapa {@link FrameStats.Stage#DECODE}).
+ */
+final class DecodeWorker implements AutoCloseable {
+
+    /**
+     * Missatge rebut i encara no descodificat.
+     *
+     * @param payload      {@code String} (JSON) o {@code ByteBuffer} (binari)
+     * @param receivedAtMs instant de recepció: el TTL es compta des d'aquí
+     */
+    record Inbound(Object payload, long receivedAtMs) {}
+
+    private final BlockingQueue<Inbound> queue;
+    private final Function<Inbound, DisplayState> decoder;
+    private final AtomicReference<DisplayState> target;
+    private final FrameStats stats;
+    private final Thread thread;
+    private volatile long dropped = 0L;
+
+    /**
+     * @param capacity missatges pendents màxims
+     * @param decoder  converteix un missatge en l'estat a mostrar (null = ignorar-lo)
+     * @param target   on es publica l'estat descodificat
+     * @param stats    on es registra el temps de cada descodificació (només l'escriu aquest fil)
+     */
+    DecodeWorker(int capacity, Function<Inbound, DisplayState> decoder, AtomicReference<DisplayState> target,
+                 FrameStats stats) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.decoder = decoder;
+        this.target = target;
+        this.stats = stats;
+        this.thread = new Thread(this::loop, "ws-decode");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Encua un missatge (no bloqueja mai el fil que crida).
+     *
+     * @param payload {@code String} o {@code ByteBuffer} tal com arriba del socket
+     */
+    void submit(Object payload) {
+        Inbound in = new Inbound(payload, System.currentTimeMillis());
+        while (!queue.offer(in)) {
+            if (queue.poll() != null) dropped++;
+        }
+    }
+
+    /** @return missatges descartats per cua plena */
+    long dropped() { return dropped; }
+
+    /** @return missatges rebuts pendents de descodificar */
+    int backlog() { return queue.size(); }
+
+    private void loop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Inbound in;
+            try {
+                in = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long t0 = System.nanoTime();
+            try {
+                DisplayState s = decoder.apply(in);
+                if (s != null) target.set(s);
+            } catch (Exception e) {
+                System.out.println("[client] decode error: " + e.getMessage());
+            }
+            stats.record(FrameStats.Stage.DECODE, System.nanoTime() - t0);
+        }
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,60 @@
+package com.project.client;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+/**
+ * Què ha de mostrar el panell: un sol objecte immutable que el fil de descodificació
+ * publica de cop i el render loop llegeix de cop, de manera que mai es barregen el
+ * contingut d'un missatge i el TTL d'un altre.
+ *
+ * Cada missatge aplicat crea un objecte nou: el render loop detecta canvis per identitat.
+ *
+ * @param mode       tipus de contingut
+ * @param text       missatge (només {@link Mode#TEXT})
+ * @param image      imatge ja ajustada al panell (només {@link Mode#IMAGE})
+ * @param raw        frame RGB888 pre-renderitzat (només {@link Mode#RAW}, només lectura)
+ * @param marquee    rètol ja renderitzat (només {@link Mode#MARQUEE})
+ * @param animation  frames ja ajustats al panell (només {@link Mode#ANIMATION})
+ * @param stream     reproductor del flux (només {@link Mode#STREAM}; és mutable, però el
+ *                   render loop només n'extreu frames)
+ * @param expireAtMs instant de caducitat ({@link System#currentTimeMillis()})
+ */
+record DisplayState(Mode mode, String text, BufferedImage image, ByteBuffer raw, Marquee marquee,
+                    Animation animation, StreamPlayer stream, long expireAtMs) {
+
+    enum Mode { NONE, TEXT, IMAGE, RAW, MARQUEE, ANIMATION, STREAM }
+
+    /** Panell buit. */
+    static final DisplayState NONE = new DisplayState(Mode.NONE, null, null, null, null, null, null, 0L);
+
+    static DisplayState text(String text, long expireAtMs) {
+        return new DisplayState(Mode.TEXT, text, null, null, null, null, null, expireAtMs);
+    }
+
+    static DisplayState image(BufferedImage image, long expireAtMs) {
+        return new DisplayState(Mode.IMAGE, null, image, null, null, null, null, expireAtMs);
+    }
+
+    static DisplayState raw(ByteBuffer rgb, long expireAtMs) {
+        return new DisplayState(Mode.RAW, null, null, rgb.asReadOnlyBuffer(), null, null, null, expireAtMs);
+    }
+
+    static DisplayState marquee(String text, Marquee marquee, long expireAtMs) {
+        return new DisplayState(Mode.MARQUEE, text, null, null, marquee, null, null, expireAtMs);
+    }
+
+    static DisplayState animation(Animation animation, long expireAtMs) {
+        return new DisplayState(Mode.ANIMATION, null, null, null, null, animation, null, expireAtMs);
+    }
+
+    /** El flux no caduca per TTL: dura mentre arribin frames ({@link StreamPlayer#isAliveAt}). */
+    static DisplayState stream(StreamPlayer stream) {
+        return new DisplayState(Mode.STREAM, null, null, null, null, null, stream, Long.MAX_VALUE);
+    }
+
+    /** @return true si hi ha contingut i encara no ha caducat a {@code nowMs} */
+    boolean isAliveAt(long nowMs) {
+        return mode != Mode.NONE && nowMs < expireAtMs && (stream == null || stream.isAliveAt(nowMs));
+    }
+}
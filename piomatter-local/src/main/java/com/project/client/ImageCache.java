@@ -0,0 +1,144 @@
+package com.project.client;
+
+import com.piomatter.UtilsImage;
+import com.piomatter.UtilsImage.FitMode;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Cache LRU d'imatges ja descodificades i ajustades al panell.
+ *
+ * La clau és el resum SHA-256 del fitxer rebut (PNG/JPG) més el mode d'ajust i la mida
+ * destí, de manera que cada combinació (FitMode, amplada, alçada) té la seva entrada.
+ * Una imatge repetida només costa el càlcul del resum i una cerca, i el render loop
+ * pot fer un blit directe (sense escalar) de la imatge guardada.
+ *
+ * El límit és en bytes (4 bytes per píxel de les imatges guardades). És segura per a
+ * ús concurrent (mètodes sincronitzats).
+ */
+final class ImageCache {
+
+    /** Clau d'una imatge ajustada: resum del contingut + geometria destí. */
+    record Key(String digest, FitMode mode, int width, int height) {}
+
+    private final long maxBytes;
+    private long bytes = 0L;
+    private long hits = 0L, misses = 0L;
+
+    /** Ordre d'accés: el primer element és el menys usat recentment. */
+    private final LinkedHashMap<Key, BufferedImage> lru = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param maxBytes memòria màxima ocupada per les imatges guardades
+     */
+    ImageCache(long maxBytes) {
+        this.maxBytes = Math.max(0L, maxBytes);
+    }
+
+    /**
+     * Retorna la imatge ajustada per a aquest contingut, descodificant-la només si no és a la cache.
+     *
+     * @param data   bytes del fitxer d'imatge (PNG/JPG), es llegeixen sense copiar-los
+     * @param mode   mode d'ajust
+     * @param width  amplada destí
+     * @param height alçada destí
+     * @return imatge TYPE_INT_RGB de {@code width x height}, o null si no es pot descodificar
+     * @throws IOException si ImageIO falla llegint les dades
+     */
+    BufferedImage getOrDecode(ByteBuffer data, FitMode mode, int width, int height) throws IOException {
+        Key key = new Key(digest(data), mode, width, height);
+        BufferedImage cached = get(key);
+        if (cached != null) return cached;
+
+        // Descodificació fora del lock: pot trigar
+        BufferedImage src = ImageIO.read(new ByteBufferInputStream(data.duplicate()));
+        if (src == null) return null;
+        BufferedImage fitted = UtilsImage.fitToSize(src, width, height, mode);
+        put(key, fitted);
+        return fitted;
+    }
+
+    /** @return la imatge guardada per a la clau, o null */
+    synchronized BufferedImage get(Key key) {
+        BufferedImage img = lru.get(key);
+        if (img != null) hits++; else misses++;
+        return img;
+    }
+
+    /** Guarda una imatge i expulsa les menys usades fins a quedar dins del límit. */
+    synchronized void put(Key key, BufferedImage img) {
+        long size = sizeOf(img);
+        if (size > maxBytes) return; // no hi cap mai
+        BufferedImage prev = lru.put(key, img);
+        if (prev != null) bytes -= sizeOf(prev);
+        bytes += size;
+
+        Iterator<Map.Entry<Key, BufferedImage>> it = lru.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<Key, BufferedImage> eldest = it.next();
+            bytes -= sizeOf(eldest.getValue());
+            it.remove();
+        }
+    }
+
+    /** @return bytes ocupats actualment */
+    synchronized long sizeBytes() { return bytes; }
+
+    /** @return nombre d'entrades */
+    synchronized int size() { return lru.size(); }
+
+    /** @return resum curt per a logs */
+    synchronized String stats() {
+        return "entries=" + lru.size() + " bytes=" + bytes + "/" + maxBytes + " hits=" + hits + " misses=" + misses;
+    }
+
+    /** @return SHA-256 en hexadecimal (no modifica la posició de {@code data}) */
+    static String digest(ByteBuffer data) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(data.duplicate());
+            return HexFormat.of().formatHex(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-256 és obligatori a tota JVM
+        }
+    }
+
+    private static long sizeOf(BufferedImage img) {
+        return 4L * img.getWidth() * img.getHeight();
+    }
+
+    /** InputStream de només lectura sobre un ByteBuffer, sense còpia intermèdia. */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) { this.buf = buf; }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? (buf.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buf.hasRemaining()) return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() { return buf.remaining(); }
+    }
+}
@@ -1,28 +1,47 @@
 package com.project.client;
 
+import com.piomatter.FrameDamage;
+import com.piomatter.FrameStats;
+import com.piomatter.FrameStats.Stage;
+import com.piomatter.GlyphAtlas;
+import com.piomatter.MatrixBackend;
+import com.piomatter.PanelLayout;
 import com.piomatter.PioMatter;
+import com.piomatter.SoftwareBackend;
 import com.piomatter.UtilsFPS;
-import com.piomatter.UtilsImage;
 import com.piomatter.UtilsImage.FitMode;
+import com.project.common.BinaryMessage;
+import com.project.common.ClientCapabilities;
+import com.project.common.MetricsEndpoint;
+import com.project.common.PromText;
 
 import org.json.JSONObject;
 
-import java.awt.*;
+import java.awt.Font;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.util.ArrayList;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Base64;
-import java.util.List;
-
-import javax.imageio.ImageIO;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Main {
 
     // Matriu
-    private static final int WIDTH = 64, HEIGHT = 64;
+    // Geometria: un panell de 64x64, o una cadena de panells amb -Dpiomatter.layout=2x1[:64x64][,serpentine][,rot=90]
+    private static final PanelLayout LAYOUT = PanelLayout.fromSystemProperties(PanelLayout.single(64, 64));
+    private static final int WIDTH = LAYOUT.canvasWidth(), HEIGHT = LAYOUT.canvasHeight();
     private static final int ADDR = 5;          // ABCDE
     private static final int LANES = 2;         // 2 lanes
-    private static final int BRIGHTNESS = 200;  // 0..255
+    private static final int BRIGHTNESS = 200;  // 0..255, inicial (l'aplica el backend a cada swap)
+    // Tots els camins de còpia escriuen a escala completa: la brillantor no passa pel Java
+    private static final int FULL_SCALE = 255;
     private static final int FPS_CAP = 60;
 
     // Dibuix
@@ -30,226 +49,549 @@ public class Main {
     // Reservem una franja superior per a l'overlay d'FPS (~10-12px) + marge.
     private static final int RESERVED_TOP = 12;
     private static final int TEXT_TOP_PAD = 2; // separació extra respecte l'overlay
-
-    // Estat missatge
-    private enum Mode { NONE, TEXT, IMAGE }
-    private volatile Mode mode = Mode.NONE;
-    private volatile String  text = null;
-    private volatile BufferedImage image = null;
-    private volatile long expireAtMs = 0L;
+    // Regió de l'overlay d'FPS (files superiors) i cada quant es refresca
+    private static final int OVERLAY_H = RESERVED_TOP + TEXT_TOP_PAD;
+    private static final long OVERLAY_REFRESH_MS = 500;
+    // Zona de contingut (per sota de l'overlay)
+    private static final int CONTENT_Y = RESERVED_TOP + TEXT_TOP_PAD;
+
+    // Font rasteritzada un sol cop (atlas de glifs); la comparteixen el render loop i el fil "ws-decode"
+    private static final GlyphAtlas FONT = GlyphAtlas.of(new Font("SansSerif", Font.PLAIN, 12));
+
+    // Imatges descodificades i ajustades, per resum del contingut
+    private static final long IMAGE_CACHE_BYTES = 8L * 1024 * 1024;
+    private final ImageCache imageCache = new ImageCache(IMAGE_CACHE_BYTES);
+    // Memòria màxima dels frames d'una animació (GIF/APNG)
+    private static final long ANIMATION_MAX_BYTES = 16L * 1024 * 1024;
+
+    // Estat missatge: publicat de cop pel fil de descodificació, llegit pel render loop
+    private final AtomicReference<DisplayState> state = new AtomicReference<>(DisplayState.NONE);
+    private static final int DECODE_QUEUE = 4;
+    // Mida màxima d'un missatge de control (brillantor, llista de clients) per mirar-lo al fil del socket
+    private static final int CONTROL_MAX_CHARS = 8192;
+    // Temps de descodificació (l'escriu només el fil "ws-decode")
+    private final FrameStats decodeStats = new FrameStats();
+    private final DecodeWorker decoder = new DecodeWorker(DECODE_QUEUE, this::decode, state, decodeStats);
+
+    // Profunditat del buffer de jitter dels fluxos (/stream), en frames
+    private static final int JITTER_DEPTH = Math.max(0, Integer.getInteger("matrixplay.jitter", 3));
+
+    // Maquetacions de text ja calculades (per text, font i àrea)
+    private static final int LAYOUT_CACHE_ENTRIES = 32;
+    private final TextLayout.Cache layouts = new TextLayout.Cache(LAYOUT_CACHE_ENTRIES);
+
+    // Posició dins d'un mur de vídeo (-Dmatrixplay.tile=<columna>,<fila>), o null
+    private static final String TILE = System.getProperty("matrixplay.tile");
+    private static final String TILE_HEADER = "X-MatrixPlay-Tile";
+    // Format d'imatge preferit (-Dmatrixplay.encoding=auto|file|raw): raw evita descodificar al client
+    private static final ClientCapabilities.Encoding ENCODING = parseEncoding(System.getProperty("matrixplay.encoding"));
+
+    // Brillantor demanada pel servidor; el render loop la passa al backend
+    private volatile int brightness = BRIGHTNESS;
+
+    // Temps de cada etapa del render loop (histogrames), consultable des de qualsevol fil
+    private final FrameStats frameStats = new FrameStats();
+    // Cada quant s'escriuen al log (-Dmatrixplay.stats.logMs, 0 = només en sortir)
+    private static final long STATS_LOG_MS = Math.max(0L, Long.getLong("matrixplay.stats.logMs", 0L));
+    // FPS suavitzat del render loop, per a les mètriques
+    private volatile double renderFps = 0.0;
+    // Informe periòdic al servidor (-Dmatrixplay.telemetry.ms, 0 = desactivat)
+    private static final long TELEMETRY_MS = Math.max(0L, Long.getLong("matrixplay.telemetry.ms", 2000L));
+    private final Telemetry telemetry = new Telemetry(frameStats, decoder, FPS_CAP);
+
+    // Diferència amb el rellotge del servidor (ping/pong), per mostrar els fluxos sincronitzats
+    private final ServerClock clock = new ServerClock();
 
     private final UtilsWS ws;
 
     public Main(String serverUri) {
-        ws = UtilsWS.getSharedInstance(serverUri);
-        ws.onMessage(this::onWsMessage);
+        // Anunciem al servidor que entenem missatges binaris (imatges sense Base64)
+        // i, si en formem part, la nostra posició dins del mur de vídeo
+        Map<String, String> headers = new HashMap<>();
+        headers.put(BinaryMessage.HANDSHAKE_HEADER, BinaryMessage.HANDSHAKE_VERSION);
+        if (TILE != null && !TILE.isBlank()) headers.put(TILE_HEADER, TILE.trim());
+        // Perfil: el servidor adapta les imatges i el ritme del flux a aquest panell
+        new ClientCapabilities(WIDTH, HEIGHT, FPS_CAP, ENCODING).putHeaders(headers);
+        ws = UtilsWS.getSharedInstance(serverUri, headers);
+        // El fil del socket només encua: la descodificació es fa al fil "ws-decode".
+        // Els pings de rellotge es responen aquí mateix, perquè la cua no falsegi el temps, i
+        // els missatges que no són contingut també: la cua descarta el més antic quan és plena.
+        ws.onMessage(msg -> {
+            if (!clock.handle(msg, ws::safeSend) && !applyControl(msg)) decoder.submit(msg);
+        });
+        ws.onBinaryMessage(decoder::submit);
+    }
+
+    private static ClientCapabilities.Encoding parseEncoding(String spec) {
+        if (spec == null || spec.isBlank()) return ClientCapabilities.Encoding.AUTO;
+        try {
+            return ClientCapabilities.Encoding.valueOf(spec.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.out.println("[client] matrixplay.encoding desconegut: " + spec + " (auto|file|raw)");
+            return ClientCapabilities.Encoding.AUTO;
+        }
+    }
+
+    /**
+     * Missatges que no són contingut (fil del socket): la brillantor s'aplica de seguida i la
+     * llista de clients no canvia res al panell. Cap dels dos ha d'ocupar una plaça a la cua
+     * de descodificació, d'on un frame o una imatge posteriors els farien fora per sempre.
+     *
+     * @param msg missatge de text rebut
+     * @return true si ja s'ha atès; false si és contingut i va a la cua
+     */
+    private boolean applyControl(String msg) {
+        // Filtre barat abans de parsejar: les imatges en Base64 i els textos llargs passen de llarg
+        if (msg.length() > CONTROL_MAX_CHARS) return false;
+        boolean isBrightness = msg.contains("\"type\":\"brightness\"");
+        if (!isBrightness && !msg.contains("\"type\":\"clients\"")) return false;
+        JSONObject o;
+        try {
+            o = new JSONObject(msg);
+        } catch (Exception e) {
+            return false;
+        }
+        switch (o.optString("type", "")) {
+            case "brightness" -> {
+                brightness = Math.max(0, Math.min(255, o.optInt("value", brightness)));
+                System.out.println("[client] BRIGHTNESS: " + brightness);
+                return true;
+            }
+            case "clients" -> {
+                return true; // el panell no mostra la llista
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Descodifica un missatge rebut (fil "ws-decode").
+     *
+     * @return l'estat a mostrar, o null si el missatge s'ignora
+     */
+    private DisplayState decode(DecodeWorker.Inbound in) {
+        if (in.payload() instanceof ByteBuffer buf) return decodeBinary(buf, in.receivedAtMs());
+        if (in.payload() instanceof String msg) return decodeJson(msg, in.receivedAtMs());
+        return null;
     }
 
-    private void onWsMessage(String msg) {
+    /** Missatges JSON de text (format original, Base64 per a les imatges). */
+    private DisplayState decodeJson(String msg, long receivedAtMs) {
         try {
             JSONObject o = new JSONObject(msg);
             String t = o.optString("type", "");
-            long ttl = Math.max(1, o.optLong("ttl_ms", 5000L));
-            expireAtMs = System.currentTimeMillis() + ttl;
+            long expireAtMs = receivedAtMs + Math.max(1, o.optLong("ttl_ms", 5000L));
 
             switch (t) {
                 case "text" -> {
-                    text = o.optString("message", "");
-                    image = null;
-                    mode = Mode.TEXT;
-                    System.out.println("[client] TEXT: " + text);
+                    return applyText(o.optString("message", ""), expireAtMs);
+                }
+                case "marquee" -> {
+                    return applyMarquee(o, receivedAtMs, expireAtMs);
                 }
                 case "image" -> {
                     String b64 = o.optString("b64", "");
-                    if (b64.isEmpty()) { mode = Mode.NONE; return; }
+                    if (b64.isEmpty()) return DisplayState.NONE;
+                    ByteBuffer data;
                     try {
-                        byte[] data = Base64.getDecoder().decode(b64);
-                        BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
-                        if (img != null) {
-                            image = img;
-                            text = null;
-                            mode = Mode.IMAGE;
-                            System.out.println("[client] IMAGE: " + o.optString("name", "(unnamed)"));
-                        } else {
-                            System.out.println("[client] IMAGE decode failed.");
-                            mode = Mode.NONE;
-                        }
-                    } catch (Exception e) {
+                        data = ByteBuffer.wrap(Base64.getDecoder().decode(b64));
+                    } catch (IllegalArgumentException e) {
                         System.out.println("[client] IMAGE error: " + e.getMessage());
-                        mode = Mode.NONE;
+                        return DisplayState.NONE;
                     }
+                    return applyImage(o.optString("name", "(unnamed)"), data, receivedAtMs, expireAtMs);
                 }
                 default -> {
-                    // ignore
+                    return null; // ignore
                 }
             }
-        } catch (Exception ignored) {}
+        } catch (Exception ignored) {
+            return null;
+        }
+    }
+
+    /** Missatges binaris ({@link BinaryMessage}): la imatge arriba sense JSON ni Base64. */
+    private DisplayState decodeBinary(ByteBuffer buf, long receivedAtMs) {
+        try {
+            BinaryMessage m = BinaryMessage.decode(buf);
+            long expireAtMs = receivedAtMs + Math.max(1, m.ttlMs);
+            String name = m.name.isEmpty() ? "(unnamed)" : m.name;
+            if (m.type == BinaryMessage.T_IMAGE) {
+                return applyImage(name, m.content, receivedAtMs, expireAtMs);
+            } else if (m.type == BinaryMessage.T_RAW_RGB888) {
+                return applyRaw(name, m, expireAtMs);
+            } else if (m.type == BinaryMessage.T_STREAM_FRAME) {
+                return applyStreamFrame(name, m, receivedAtMs);
+            }
+            return null;
+        } catch (Exception e) {
+            System.out.println("[client] BINARY error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private DisplayState applyText(String message, long expireAtMs) {
+        System.out.println("[client] TEXT: " + message);
+        return DisplayState.text(message, expireAtMs);
+    }
+
+    /**
+     * Rètol en desplaçament: la tira es renderitza aquí (fil "ws-decode") i el render loop
+     * només en copia la finestra visible. Amb {@code loops > 0} el rètol dura just les voltes
+     * demanades i el TTL no s'aplica.
+     */
+    private DisplayState applyMarquee(JSONObject o, long receivedAtMs, long expireAtMs) {
+        String message = o.optString("message", "");
+        double speed = o.optDouble("speed_px_s", Marquee.DEFAULT_SPEED);
+        if (!(speed > 0)) speed = Marquee.DEFAULT_SPEED;
+        boolean leftwards = !"right".equalsIgnoreCase(o.optString("direction", "left"));
+        int loops = Math.max(0, o.optInt("loops", 0));
+        boolean blend = o.optBoolean("blend", true);
+
+        Marquee m = Marquee.render(message, FONT, speed, leftwards, loops, blend, receivedAtMs);
+        System.out.println("[client] MARQUEE: " + message + " (" + speed + " px/s, "
+                + (leftwards ? "left" : "right") + ", voltes=" + (loops == 0 ? "∞" : loops) + ")");
+        return DisplayState.marquee(message, m, loops > 0 ? m.endMs(WIDTH) : expireAtMs);
+    }
+
+    private DisplayState applyImage(String name, ByteBuffer data, long receivedAtMs, long expireAtMs) {
+        try {
+            // GIF/APNG animat: tots els frames es preparen ara, el render loop només els copia
+            Animation anim = Animation.decode(data, WIDTH, HEIGHT, FitMode.CONTAIN,
+                    ANIMATION_MAX_BYTES, receivedAtMs);
+            if (anim != null) {
+                System.out.println("[client] ANIMATION: " + name + " (" + anim.frameCount() + " frames, "
+                        + anim.durationMs() + " ms)");
+                // Com a mínim una volta sencera, encara que el TTL sigui més curt
+                return DisplayState.animation(anim, Math.max(expireAtMs, receivedAtMs + anim.durationMs()));
+            }
+
+            // Ja ajustada al panell: el render loop només fa un blit
+            BufferedImage img = imageCache.getOrDecode(data, FitMode.CONTAIN, WIDTH, HEIGHT);
+            if (img != null) {
+                System.out.println("[client] IMAGE: " + name);
+                return DisplayState.image(img, expireAtMs);
+            }
+            System.out.println("[client] IMAGE decode failed.");
+        } catch (Exception e) {
+            System.out.println("[client] IMAGE error: " + e.getMessage());
+        }
+        return DisplayState.NONE;
+    }
+
+    private DisplayState applyRaw(String name, BinaryMessage m, long expireAtMs) {
+        if (m.rawWidth() != WIDTH || m.rawHeight() != HEIGHT) {
+            System.out.println("[client] RAW " + name + ": mida " + m.rawWidth() + "x" + m.rawHeight()
+                    + " diferent del panell " + WIDTH + "x" + HEIGHT);
+            return DisplayState.NONE;
+        }
+        if (m.rawPixels().remaining() != WIDTH * HEIGHT * 3) {
+            // copyRawFrame copia el frame sencer des del render loop: no hi pot arribar truncat
+            System.out.println("[client] RAW " + name + ": " + m.rawPixels().remaining() + " bytes de píxels, calen "
+                    + WIDTH * HEIGHT * 3);
+            return DisplayState.NONE;
+        }
+        System.out.println("[client] RAW: " + name);
+        return DisplayState.raw(m.rawPixels(), expireAtMs);
+    }
+
+    /**
+     * Frame d'un flux: va al buffer de jitter del reproductor actual. Només el primer frame
+     * d'un flux nou canvia l'estat; la resta retornen null (l'estat no canvia).
+     */
+    private DisplayState applyStreamFrame(String name, BinaryMessage m, long receivedAtMs) {
+        DisplayState cur = state.get();
+        StreamPlayer player = (cur.mode() == DisplayState.Mode.STREAM && cur.isAliveAt(receivedAtMs)
+                && cur.stream().streamId() == m.streamId()) ? cur.stream() : null;
+        if (player != null) {
+            player.offer(m.streamSeq(), m.streamPtsMs(), m.streamIntervalUs(), m.ttlMs, m.isDelta(), m.streamPixels(),
+                    receivedAtMs);
+            return null;
+        }
+
+        if (m.rawWidth() != WIDTH || m.rawHeight() != HEIGHT) {
+            if (m.streamSeq() == 0) {
+                System.out.println("[client] STREAM " + name + ": mida " + m.rawWidth() + "x" + m.rawHeight()
+                        + " diferent del panell " + WIDTH + "x" + HEIGHT);
+            }
+            return null;
+        }
+        System.out.println("[client] STREAM: " + name + " (jitter " + JITTER_DEPTH + " frames)");
+        player = new StreamPlayer(m.streamId(), name, WIDTH, HEIGHT, JITTER_DEPTH, clock, receivedAtMs);
+        player.offer(m.streamSeq(), m.streamPtsMs(), m.streamIntervalUs(), m.ttlMs, m.isDelta(), m.streamPixels(),
+                receivedAtMs);
+        return DisplayState.stream(player);
     }
 
     public void run() {
-        PioMatter pm = null;
+        MatrixBackend pm = null;
         PioMatter.FB fb = null;
         BufferedImage back = null;
-        Graphics2D g = null;
 
         final UtilsFPS fps = new UtilsFPS();
+        final FrameStats stats = frameStats;
+        final ScheduledExecutorService reporters = startReporters();
+        // Mètriques Prometheus (-Dmatrixplay.metrics.port=<port>)
+        final MetricsEndpoint metrics = MetricsEndpoint.fromSystemProperties(this::metricsText);
 
         try {
-            pm = new PioMatter(WIDTH, HEIGHT, ADDR, LANES, BRIGHTNESS, 0);
+            pm = MatrixBackend.open(LAYOUT, ADDR, LANES, BRIGHTNESS, 0);
+            System.out.println("Panell: " + LAYOUT);
             fb = pm.mapFramebuffer();
 
+            // Back-buffer: es dibuixa directament sobre els píxels (sense Java2D per al text)
             back = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
-            g = back.createGraphics();
-            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
-            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
-            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-
-            final Font font = new Font("SansSerif", Font.PLAIN, 12);
+            final int[] pixels = ((DataBufferInt) back.getRaster().getDataBuffer()).getData();
 
             // Neteja inicial
             PioMatter.flushBlack(pm, fb, 2, 10);
 
+            // Damage tracking: només es copien les files canviades, i sense canvis no es fa swap
+            final FrameDamage damage = new FrameDamage(WIDTH, HEIGHT);
+            final int[] underOverlay = new int[WIDTH * OVERLAY_H]; // contingut sota l'overlay
+            DisplayState drawn = null;
+            boolean drawnAlive = false;
+            boolean showingRaw = false;
+            int shownFrame = -1; // frame d'animació present al framebuffer
+            int shownBrightness = BRIGHTNESS;
+            long nextOverlayMs = 0L;
+
             while (true) {
-                fps.beginFrame();
-
-                // Fons negre
-                g.setColor(Color.BLACK);
-                g.fillRect(0, 0, WIDTH, HEIGHT);
-
-                // Zona de dibuix de text (evitant l'overlay d'FPS)
-                int startY = Math.max(0, RESERVED_TOP + TEXT_TOP_PAD);
-                int availH = Math.max(0, HEIGHT - startY);
-                int availW = Math.max(0, WIDTH - TEXT_X);
-
-                // Pinta segons mode si no ha caducat
-                boolean alive = System.currentTimeMillis() < expireAtMs;
-                if (alive) {
-                    if (mode == Mode.TEXT && text != null) {
-                        g.setFont(font);
-                        g.setColor(Color.WHITE);
-                        FontMetrics fm = g.getFontMetrics();
-
-                        // Word-wrap amb mètriques reals, tallat vertical i horitzontal (amb ‘…’)
-                        List<String> lines = wrapText(text, fm, availW, availH);
-                        int y = startY + fm.getAscent();
-                        for (String line : lines) {
-                            g.drawString(line, TEXT_X, y);
-                            y += fm.getHeight();
-                        }
-
-                    } else if (mode == Mode.IMAGE && image != null) {
-                        // Mostra la imatge amb CONTAIN dins tota la pantalla
-                        UtilsImage.drawImageFit(g, image, 0, 0, WIDTH, HEIGHT, FitMode.CONTAIN);
+                if (!fps.lastWokeEarly()) { // despertat abans d'hora pel flux: continua el mateix frame
+                    fps.beginFrame();
+                    stats.beginFrame();
+                }
+
+                long nowMs = System.currentTimeMillis();
+                DisplayState s = state.get(); // una sola lectura: contingut i TTL coherents
+                boolean alive = s.isAliveAt(nowMs);
+
+                // Brillantor: només es refà la taula del backend; el swap torna a mostrar el frame actual
+                int b = brightness;
+                if (b != shownBrightness) {
+                    pm.setBrightness(b);
+                    pm.swap();
+                    stats.mark(Stage.SWAP);
+                    shownBrightness = b;
+                }
+
+                // Només es redibuixa el contingut si ha arribat un missatge nou o ha caducat
+                boolean contentDirty = s != drawn || alive != drawnAlive;
+
+                Animation anim = (alive && s.mode() == DisplayState.Mode.ANIMATION) ? s.animation() : null;
+                StreamPlayer stream = (alive && s.mode() == DisplayState.Mode.STREAM) ? s.stream() : null;
+
+                if (contentDirty) {
+                    if (s != drawn) telemetry.applied(s, nowMs);
+                    if (drawnAlive && drawn.mode() == DisplayState.Mode.STREAM) {
+                        System.out.println("[client] STREAM fi: " + drawn.stream().name() + " " + drawn.stream().stats());
+                    }
+                    ByteBuffer rawFrame = (alive && s.mode() == DisplayState.Mode.RAW) ? s.raw() : null;
+                    if (rawFrame != null) {
+                        // Frame pre-renderitzat pel servidor: directe al framebuffer (sense overlay)
+                        copyRawFrame(rawFrame, fb);
+                        damage.invalidate();
+                        stats.mark(Stage.COPY);
+                        pm.swap();
+                        stats.mark(Stage.SWAP);
+                    } else if (anim != null || stream != null) {
+                        // Els frames van directes al framebuffer (sense overlay), a sota
+                        damage.invalidate();
+                        shownFrame = -1;
+                    } else {
+                        drawContent(pixels, FONT, alive ? s : DisplayState.NONE);
+                        System.arraycopy(pixels, 0, underOverlay, 0, underOverlay.length);
+                        stats.mark(Stage.DRAW);
+                    }
+                    showingRaw = rawFrame != null || anim != null || stream != null;
+                    drawn = s;
+                    drawnAlive = alive;
+                }
+
+                // Animació: una còpia al framebuffer només quan canvia el frame
+                if (anim != null) {
+                    int i = anim.frameAt(nowMs);
+                    if (i != shownFrame) {
+                        anim.copyFrame(i, fb.data, fb.strideBytes);
+                        stats.mark(Stage.COPY);
+                        pm.swap();
+                        stats.mark(Stage.SWAP);
+                        shownFrame = i;
                     }
-                } else {
-                    // caducat
-                    mode = Mode.NONE;
-                    text = null;
-                    image = null;
                 }
 
-                // FPS overlay (queda per sobre)
-                fps.drawOverlay(g, 1, 9);
+                // Flux: el frame que toca segons el rellotge, un sol swap per frame
+                if (stream != null && stream.present(nowMs, fb.data, fb.strideBytes)) {
+                    stats.mark(Stage.COPY);
+                    pm.swap();
+                    stats.mark(Stage.SWAP);
+                }
+
+                // Rètol: es mou a cada frame (la banda no toca l'overlay ni la resta del fons)
+                Marquee marquee = (alive && s.mode() == DisplayState.Mode.MARQUEE) ? s.marquee() : null;
+                if (marquee != null) {
+                    int bandY = CONTENT_Y + Math.max(0, (HEIGHT - CONTENT_Y - marquee.height()) / 2);
+                    marquee.draw(pixels, WIDTH, HEIGHT, bandY, nowMs);
+                    stats.mark(Stage.DRAW);
+                }
 
-                // Volcat framebuffer
-                PioMatter.copyBufferedImageToRGB888(back, fb.data, fb.strideBytes, WIDTH, HEIGHT, BRIGHTNESS);
-                pm.swap();
+                boolean overlayDirty = !showingRaw && (contentDirty || nowMs >= nextOverlayMs);
+                if (overlayDirty && !contentDirty) {
+                    // L'overlay és una regió pròpia: restaurem el que hi havia a sota
+                    System.arraycopy(underOverlay, 0, pixels, 0, underOverlay.length);
+                }
+
+                // FPS overlay (queda per sobre), refrescat a baixa freqüència
+                if (overlayDirty) {
+                    fps.drawOverlay(pixels, WIDTH, OVERLAY_H, 1, 9);
+                    nextOverlayMs = nowMs + OVERLAY_REFRESH_MS;
+                    stats.mark(Stage.DRAW);
+                }
 
-                // Cap FPS
-                fps.endFrameAndCap(FPS_CAP);
+                // Volcat framebuffer (només files canviades) i swap si cal
+                if (overlayDirty || marquee != null) {
+                    int rows = damage.flush(back, fb.data, fb.strideBytes, FULL_SCALE);
+                    stats.mark(Stage.COPY);
+                    if (rows > 0) {
+                        pm.swap();
+                        stats.mark(Stage.SWAP);
+                    }
+                }
+
+                // Flux: el pròxim frame no espera al tick següent, es desperta just quan toca
+                // (els tiles d'un mur canvien alhora encara que els seus render loops no vagin en fase)
+                if (stream != null) {
+                    long dueMs = stream.nextPlayAtMs();
+                    // nowMs és de l'inici del frame: el termini es calcula amb l'hora actual
+                    if (dueMs != Long.MAX_VALUE) {
+                        fps.wakeBy(System.nanoTime() + (dueMs - System.currentTimeMillis()) * 1_000_000L);
+                    }
+                }
+
+                // Cap FPS: graella de terminis absoluts (sense deriva) amb espera final activa
+                // Si el flux l'ha despertat abans del termini, el frame no s'acaba (ni compta a l'FPS)
+                fps.endFrameAndPace(FPS_CAP);
+                stats.mark(Stage.SLEEP);
+                if (!fps.lastWokeEarly()) {
+                    stats.endFrame(fps.lastFrameMissed());
+                    renderFps = fps.getFPS();
+                }
             }
 
         } catch (Throwable t) {
             t.printStackTrace();
         } finally {
-            if (g != null) g.dispose();
+            decoder.close();
             try { if (pm != null && fb != null) PioMatter.flushBlack(pm, fb, 2, 10); } catch (InterruptedException ignored) {}
             if (pm != null) pm.close();
+            if (pm instanceof SoftwareBackend soft) System.out.println(soft.summary());
+            System.out.println(fps.pacingSummary());
+            if (reporters != null) reporters.shutdownNow();
+            if (metrics != null) metrics.close();
+            System.out.println(stats.summary());
             ws.forceExit();
         }
     }
 
     /**
-     * Fa word-wrap amb mètriques (FontMetrics) respectant amplada i alçada disponibles.
-     * Trunca l'última línia amb ‘…’ si no hi cap tot el text.
+     * Log periòdic dels histogrames i informe al servidor, des d'un fil propi (el render loop
+     * no s'atura).
+     *
+     * @return el planificador, o null si tots dos estan desactivats
      */
-    private static List<String> wrapText(String s, FontMetrics fm, int maxW, int maxH) {
-        ArrayList<String> out = new ArrayList<>();
-        if (s == null || s.isEmpty() || maxW <= 0 || maxH <= 0) return out;
-
-        int lineH = fm.getHeight();
-        int maxLines = Math.max(1, maxH / lineH);
-
-        // Split per espais (preserva paraules); també tracta salts de línia explícits
-        String[] paragraphs = s.split("\\R"); // \R = qualsevol salt de línia
-        for (String para : paragraphs) {
-            // Si el paràgraf és buit, afegim línia en blanc si queda espai
-            if (para.isEmpty()) {
-                if (out.size() < maxLines) out.add("");
-                else break;
-                continue;
-            }
+    private ScheduledExecutorService startReporters() {
+        if (STATS_LOG_MS <= 0 && TELEMETRY_MS <= 0) return null;
+        ScheduledExecutorService ses = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "stats-report");
+            t.setDaemon(true);
+            return t;
+        });
+        if (STATS_LOG_MS > 0) {
+            ses.scheduleAtFixedRate(() -> System.out.println(frameStats.summary()),
+                    STATS_LOG_MS, STATS_LOG_MS, TimeUnit.MILLISECONDS);
+        }
+        if (TELEMETRY_MS > 0) {
+            ses.scheduleAtFixedRate(() -> {
+                String report = telemetry.next(); // la finestra avança encara que no es pugui enviar
+                if (ws.isOpen()) ws.safeSend(report);
+            }, TELEMETRY_MS, TELEMETRY_MS, TimeUnit.MILLISECONDS);
+        }
+        return ses;
+    }
 
-            String[] words = para.split("\\s+");
-            StringBuilder line = new StringBuilder();
-
-            for (int i = 0; i < words.length; i++) {
-                String w = words[i];
-                String candidate = line.length() == 0 ? w : (line + " " + w);
-                if (fm.stringWidth(candidate) <= maxW) {
-                    line.setLength(0);
-                    line.append(candidate);
-                } else {
-                    // si la paraula sola ja és massa llarga, trenquem-la amb ellipsi
-                    if (line.length() == 0) {
-                        out.add(truncateWithEllipsis(w, fm, maxW));
-                    } else {
-                        out.add(line.toString());
-                        // revalorem w a la següent línia
-                        i--; // tornem a intentar afegir ‘w’ en una línia nova
-                    }
-                    line.setLength(0);
-                    // si ja no hi ha espai vertical, sortim
-                    if (out.size() >= maxLines) break;
-                }
-                if (out.size() >= maxLines) break;
-            }
+    /** Mètriques en format Prometheus (fil de l'endpoint HTTP; el render loop no s'atura). */
+    private String metricsText() {
+        FrameStats stats = frameStats;
+        PromText p = new PromText()
+                .gauge("matrixplay_client_fps", "FPS suavitzat del render loop.", Math.max(0.0, renderFps))
+                .counter("matrixplay_client_frames_total", "Frames del render loop.", stats.frames())
+                .counter("matrixplay_client_dropped_frames_total", "Frames que han passat del seu termini.",
+                        stats.droppedFrames())
+                .gauge("matrixplay_client_decode_backlog", "Missatges rebuts pendents de descodificar.", decoder.backlog())
+                .counter("matrixplay_client_decode_dropped_total", "Missatges descartats per cua de descodificació plena.",
+                        decoder.dropped());
+        long offset = clock.offsetMs();
+        if (offset != ServerClock.UNKNOWN) {
+            p.gauge("matrixplay_client_clock_offset_seconds", "Rellotge local menys rellotge del servidor.", offset / 1e3);
+        }
 
-            if (out.size() >= maxLines) break;
-            if (line.length() > 0) {
-                out.add(line.toString());
+        p.family("matrixplay_client_stage_seconds", "histogram", "Temps de cada etapa del render loop i de la descodificació.");
+        for (Stage st : Stage.values()) {
+            FrameStats src = st == Stage.DECODE ? decodeStats : stats;
+            p.histogram("matrixplay_client_stage_seconds", src, st, "stage", st.name().toLowerCase(Locale.ROOT));
+        }
+        p.family("matrixplay_client_stage_quantile_seconds", "gauge", "Percentils de cada etapa des de l'arrencada.");
+        for (Stage st : Stage.values()) {
+            FrameStats src = st == Stage.DECODE ? decodeStats : stats;
+            if (src.count(st) == 0) continue;
+            String stage = st.name().toLowerCase(Locale.ROOT);
+            for (double q : new double[]{50, 95, 99}) {
+                p.sample("matrixplay_client_stage_quantile_seconds", src.percentileNs(st, q) / 1e9,
+                        "stage", stage, "quantile", Double.toString(q / 100));
             }
-
-            if (out.size() >= maxLines) break;
         }
+        return p.toString();
+    }
 
-        // Si hem excedit l’alçada, trunquem l’última línia amb ‘…’
-        if (out.size() > maxLines) {
-            while (out.size() > maxLines) out.remove(out.size() - 1);
-            String last = out.get(out.size() - 1);
-            out.set(out.size() - 1, truncateWithEllipsis(last, fm, maxW));
-        } else if (out.size() == maxLines) {
-            // potser queda contingut pendent (no podem saber-ho fàcilment); marquem amb ‘…’ si la última ja és molt plena
-            // (opcional; si no ho vols, comenta aquesta part)
-            // out.set(out.size() - 1, truncateWithEllipsis(out.get(out.size() - 1), fm, maxW));
+    /** Copia un frame RGB888 (files sense padding) al framebuffer, fila a fila segons l'stride. */
+    private static void copyRawFrame(ByteBuffer rgb, PioMatter.FB fb) {
+        int rowBytes = WIDTH * 3;
+        if (fb.strideBytes == rowBytes) {
+            fb.data.put(0, rgb, 0, rowBytes * HEIGHT);
+        } else {
+            for (int y = 0; y < HEIGHT; y++) {
+                fb.data.put(y * fb.strideBytes, rgb, y * rowBytes, rowBytes);
+            }
         }
-
-        return out;
     }
 
-    /** Trunca una cadena a maxW i hi afegeix ‘…’ si cal. */
-    private static String truncateWithEllipsis(String s, FontMetrics fm, int maxW) {
-        if (fm.stringWidth(s) <= maxW) return s;
-        String ell = "…";
-        int ellW = fm.stringWidth(ell);
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < s.length(); i++) {
-            int w = fm.stringWidth(sb.toString() + s.charAt(i));
-            if (w + ellW > maxW) break;
-            sb.append(s.charAt(i));
+    /** Pinta el fons i el missatge (text o imatge) al back-buffer; el rètol el pinta el render loop. */
+    private void drawContent(int[] pixels, GlyphAtlas font, DisplayState s) {
+        // Fons negre
+        Arrays.fill(pixels, 0);
+
+        // Zona de dibuix de text (evitant l'overlay d'FPS)
+        int startY = Math.max(0, CONTENT_Y);
+        int availH = Math.max(0, HEIGHT - startY);
+        int availW = Math.max(0, WIDTH - TEXT_X);
+
+        String txt = s.text();
+        BufferedImage img = s.image();
+        if (s.mode() == DisplayState.Mode.TEXT && txt != null) {
+            // Word-wrap amb els avanços de l'atlas, tallat vertical i horitzontal (amb ‘…’)
+            TextLayout layout = layouts.get(txt, font, availW, availH);
+            int y = startY + font.getAscent();
+            for (String line : layout.lines()) {
+                font.drawString(pixels, WIDTH, HEIGHT, line, TEXT_X, y, 0xFFFFFF);
+                y += font.getLineHeight();
+            }
+
+        } else if (s.mode() == DisplayState.Mode.IMAGE && img != null) {
+            // Imatge ja ajustada amb CONTAIN a tota la pantalla (ImageCache): còpia directa
+            img.getRGB(0, 0, WIDTH, HEIGHT, pixels, 0, WIDTH);
         }
-        sb.append(ell);
-        return sb.toString();
     }
 
     public static void main(String[] args) {
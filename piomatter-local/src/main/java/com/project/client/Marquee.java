@@ -0,0 +1,127 @@
+package com.project.client;
+
+import com.piomatter.GlyphAtlas;
+
+/**
+ * Text en desplaçament (rètol): tot el missatge es renderitza un sol cop en una tira
+ * fora de pantalla i, a cada frame, se'n copia la finestra visible segons el temps.
+ *
+ * La posició depèn només del rellotge (no del nombre de frames), de manera que la velocitat
+ * és constant encara que es perdin frames. Amb {@code blend} la posició fraccionària es
+ * resol barrejant cada píxel amb el veí (desplaçament sub-píxel). El dibuix per frame no
+ * fa cap crida de text ni cap reserva de memòria.
+ *
+ * El text entra per un costat del panell i surt del tot per l'altre: una volta recorre
+ * {@code amplada del panell + amplada del text} píxels. És immutable.
+ */
+final class Marquee {
+
+    /** Velocitat per defecte (píxels per segon). */
+    static final double DEFAULT_SPEED = 30.0;
+
+    private final int[] strip;     // text renderitzat, blanc sobre negre
+    private final int stripW, stripH;
+    private final double speedPxPerMs;
+    private final boolean leftwards;
+    private final int loops;       // 0 = sense límit (fins al TTL)
+    private final boolean blend;
+    private final long startMs;
+
+    private Marquee(int[] strip, int stripW, int stripH, double speedPxS, boolean leftwards,
+                    int loops, boolean blend, long startMs) {
+        this.strip = strip;
+        this.stripW = stripW;
+        this.stripH = stripH;
+        this.speedPxPerMs = Math.max(1.0, speedPxS) / 1000.0;
+        this.leftwards = leftwards;
+        this.loops = Math.max(0, loops);
+        this.blend = blend;
+        this.startMs = startMs;
+    }
+
+    /**
+     * Renderitza el text (en una sola línia) a la tira.
+     *
+     * @param text      missatge; els salts de línia es converteixen en espais
+     * @param font      atlas de la font
+     * @param speedPxS  velocitat en píxels per segon
+     * @param leftwards true = cap a l'esquerra (lectura normal), false = cap a la dreta
+     * @param loops     voltes a fer (0 = fins que caduqui el missatge)
+     * @param blend     desplaçament sub-píxel amb barreja de veïns
+     * @param startMs   instant d'inici ({@link System#currentTimeMillis()})
+     */
+    static Marquee render(String text, GlyphAtlas font, double speedPxS, boolean leftwards,
+                          int loops, boolean blend, long startMs) {
+        String line = text.replaceAll("\\R", " ");
+        int w = Math.max(1, font.stringWidth(line));
+        int h = font.getLineHeight();
+        int[] strip = new int[w * h];
+        font.drawString(strip, w, h, line, 0, font.getAscent(), 0xFFFFFF);
+        return new Marquee(strip, w, h, speedPxS, leftwards, loops, blend, startMs);
+    }
+
+    /** @return alçada de la tira (una línia de text) */
+    int height() { return stripH; }
+
+    /** @return voltes a fer (0 = sense límit) */
+    int loops() { return loops; }
+
+    /**
+     * @param panelW amplada de la finestra visible
+     * @return durada d'una volta en ms
+     */
+    long periodMs(int panelW) {
+        return (long) Math.ceil((panelW + stripW) / speedPxPerMs);
+    }
+
+    /**
+     * @param panelW amplada de la finestra visible
+     * @return instant en què acaben les voltes, o {@link Long#MAX_VALUE} si no n'hi ha límit
+     */
+    long endMs(int panelW) {
+        return loops == 0 ? Long.MAX_VALUE : startMs + loops * periodMs(panelW);
+    }
+
+    /**
+     * Copia la finestra visible de la tira a les files {@code [y0, y0 + height())} del back-buffer.
+     *
+     * @param dst    píxels del back-buffer, {@code dstW} per fila
+     * @param dstW   amplada del back-buffer (i de la finestra)
+     * @param dstH   alçada del back-buffer (les files de fora no es toquen)
+     * @param y0     primera fila de la banda
+     * @param nowMs  instant actual
+     */
+    void draw(int[] dst, int dstW, int dstH, int y0, long nowMs) {
+        double period = dstW + stripW;
+        double p = ((Math.max(0L, nowMs - startMs)) * speedPxPerMs) % period;
+        // Columna de la tira que cau a x = 0 (en coma flotant per al sub-píxel)
+        double origin = leftwards ? p - dstW : stripW - p;
+        int base = (int) Math.floor(origin);
+        int frac = blend ? (int) ((origin - base) * 256.0) : 0;   // 0..255
+
+        int rows = Math.min(stripH, dstH - y0);
+        for (int y = Math.max(0, -y0); y < rows; y++) {
+            int o = (y0 + y) * dstW;
+            int so = y * stripW;
+            for (int x = 0; x < dstW; x++) {
+                int sx = base + x;
+                int a = sample(so, sx);
+                dst[o + x] = (frac == 0) ? a : mix(a, sample(so, sx + 1), frac);
+            }
+        }
+    }
+
+    private int sample(int rowOff, int sx) {
+        return (sx < 0 || sx >= stripW) ? 0 : strip[rowOff + sx];
+    }
+
+    /** Barreja {@code a} i {@code b} per canal: {@code a*(256-f)/256 + b*f/256}. */
+    private static int mix(int a, int b, int f) {
+        if (a == b) return a;
+        int g = 256 - f;
+        int r  = (((a >> 16) & 0xFF) * g + ((b >> 16) & 0xFF) * f) >> 8;
+        int gr = (((a >> 8) & 0xFF) * g + ((b >> 8) & 0xFF) * f) >> 8;
+        int bl = ((a & 0xFF) * g + (b & 0xFF) * f) >> 8;
+        return (r << 16) | (gr << 8) | bl;
+    }
+}
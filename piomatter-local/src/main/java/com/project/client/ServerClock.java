@@ -0,0 +1,61 @@
+package com.project.client;
+
+import org.json.JSONObject;
+
+import java.util.function.Consumer;
+
+/**
+ * Rellotge del servidor vist des del client.
+ *
+ * El servidor envia pings periòdics amb el seu instant {@code t0}; el client respon de seguida
+ * (al fil del socket, sense passar per la cua de descodificació, perquè l'espera no
+ * s'afegeixi al temps d'anada i tornada) amb {@code t0} i el seu propi instant. A partir dels
+ * pongs, el servidor estima la diferència entre rellotges i la torna als pings següents.
+ *
+ * Amb aquesta diferència, tots els clients d'un mur de vídeo converteixen el mateix instant
+ * de presentació al mateix moment real, independentment de la latència de cadascun.
+ */
+final class ServerClock {
+
+    /** Diferència encara desconeguda. */
+    static final long UNKNOWN = Long.MIN_VALUE;
+
+    private volatile long offsetMs = UNKNOWN;
+    private volatile long rttMs = -1L;
+
+    /**
+     * Respon els pings del servidor (fil del socket).
+     *
+     * @param message missatge de text rebut
+     * @param reply   enviament de la resposta
+     * @return true si era un ping (ja atès); false si s'ha de processar com sempre
+     */
+    boolean handle(String message, Consumer<String> reply) {
+        // Filtre barat abans de parsejar: la resta de missatges no s'han de tocar aquí
+        if (message.length() > 160 || !message.contains("\"ping\"")) return false;
+        long t1 = System.currentTimeMillis();
+        JSONObject o;
+        try {
+            o = new JSONObject(message);
+        } catch (Exception e) {
+            return false;
+        }
+        if (!"ping".equals(o.optString("type"))) return false;
+
+        reply.accept(new JSONObject().put("type", "pong").put("t0", o.optLong("t0")).put("t1", t1).toString());
+        if (o.has("offset_ms")) {
+            offsetMs = o.optLong("offset_ms");
+            rttMs = o.optLong("rtt_ms", -1L);
+        }
+        return true;
+    }
+
+    /** @return rellotge local - rellotge del servidor, en ms, o {@link #UNKNOWN} */
+    long offsetMs() { return offsetMs; }
+
+    @Override
+    public String toString() {
+        long off = offsetMs;
+        return off == UNKNOWN ? "rellotge=?" : "rellotge=" + (off >= 0 ? "+" : "") + off + "ms (rtt " + rttMs + "ms)";
+    }
+}
@@ -0,0 +1,196 @@
+package com.project.client;
+
+import com.project.common.FrameDelta;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Reproducció d'un flux de frames (/stream) amb buffer de jitter.
+ *
+ * Cada frame porta el seu número i l'instant de presentació segons el rellotge del servidor,
+ * i es mostra a {@code presentació + diferència + profunditat * interval}: el buffer absorbeix
+ * fins a {@code profunditat} frames de variació en el temps d'arribada. La diferència entre
+ * rellotges és la que ha estimat el servidor amb ping/pong ({@link ServerClock}), igual de
+ * precisa a tots els clients: és el que fa que els tiles d'un mur de vídeo canviïn de frame
+ * alhora. Mentre no se sap, s'estima com el mínim de {@code recepció - presentació} observat
+ * (el frame que ha arribat més ràpid), que inclou la latència pròpia de cada client.
+ *
+ * Els frames poden ser sencers (keyframes) o trams respecte a l'anterior ({@link FrameDelta}),
+ * que s'apliquen directament sobre el framebuffer: mentre dura el flux, el framebuffer conté
+ * sempre l'últim frame aplicat. Per això un frame endarrerit no es llença sinó que s'aplica
+ * sense mostrar-lo: si en un mateix frame del render loop en toquen diversos, s'apliquen en
+ * ordre i només es fa un swap. Si falta un frame de la cadena (perdut, desordenat o buffer
+ * desbordat) s'ignoren els trams fins al keyframe següent.
+ *
+ * El fil de descodificació hi afegeix frames i el render loop els consumeix: els mètodes
+ * són sincronitzats. Els buffers dels frames es reutilitzen.
+ */
+final class StreamPlayer {
+
+    private static final class Frame {
+        byte[] data = new byte[0];
+        int length;
+        boolean delta;
+        int seq;
+        long playAtMs;
+    }
+
+    private final int streamId;
+    private final String name;
+    private final int frameBytes, rowBytes;
+    private final int depth;
+    private final ServerClock clock;
+
+    private final ArrayDeque<Frame> queue = new ArrayDeque<>(); // per ordre de número de frame
+    private final ArrayDeque<Frame> free = new ArrayDeque<>();
+
+    private long observedOffsetMs = Long.MAX_VALUE; // rellotge local - rellotge del servidor + latència mínima
+    private boolean synced = false;            // l'últim frame ha usat el rellotge del servidor
+    private int lastSeq = -1;                  // últim frame acceptat
+    private boolean needKey = true;            // cadena de trams trencada: cal un keyframe
+    private long lastReceivedMs;
+    private long holdMs = 1L;                  // temps de vida de l'últim missatge rebut
+
+    // Mètriques
+    private long received = 0L, shown = 0L, late = 0L, overflow = 0L, broken = 0L;
+    private long bytesReceived = 0L;
+
+    /**
+     * @param streamId identificador del flux
+     * @param name     nom per als logs
+     * @param width    amplada dels frames (igual que el panell)
+     * @param height   alçada dels frames
+     * @param depth    profunditat del buffer de jitter, en frames
+     * @param clock    diferència de rellotge estimada pel servidor
+     * @param nowMs    instant de creació
+     */
+    StreamPlayer(int streamId, String name, int width, int height, int depth, ServerClock clock, long nowMs) {
+        this.streamId = streamId;
+        this.name = name;
+        this.rowBytes = width * 3;
+        this.frameBytes = rowBytes * height;
+        this.depth = Math.max(0, depth);
+        this.clock = clock;
+        this.lastReceivedMs = nowMs;
+    }
+
+    /** @return identificador del flux */
+    int streamId() { return streamId; }
+
+    /** @return nom del flux */
+    String name() { return name; }
+
+    /**
+     * Afegeix un frame rebut (fil de descodificació).
+     *
+     * @param seq          número de frame
+     * @param ptsMs        instant de presentació (rellotge del servidor)
+     * @param intervalUs   interval nominal entre frames
+     * @param ttlMs        temps que es manté l'últim frame si deixen d'arribar-ne (el del missatge:
+     *                     un client que rep un de cada N frames el rep més llarg)
+     * @param delta        true si {@code pixels} són trams respecte al frame {@code seq - 1}
+     * @param pixels       frame RGB888 sencer ({@code width * height * 3} bytes) o trams
+     * @param receivedAtMs instant de recepció (rellotge local)
+     */
+    synchronized void offer(int seq, long ptsMs, int intervalUs, long ttlMs, boolean delta, ByteBuffer pixels,
+                            long receivedAtMs) {
+        received++;
+        bytesReceived += pixels.remaining();
+        lastReceivedMs = receivedAtMs;
+        holdMs = Math.max(1L, ttlMs);
+        if (seq <= lastSeq) {
+            late++; // desordenat: el següent ja s'ha acceptat
+            return;
+        }
+        if (delta ? (needKey || seq != lastSeq + 1) : pixels.remaining() != frameBytes) {
+            if (!needKey) broken++;
+            needKey = true;
+            lastSeq = seq;
+            return;
+        }
+        needKey = false;
+
+        observedOffsetMs = Math.min(observedOffsetMs, receivedAtMs - ptsMs);
+        long offsetMs = clock.offsetMs();
+        synced = offsetMs != ServerClock.UNKNOWN;
+        if (!synced) offsetMs = observedOffsetMs;
+        long playAtMs = ptsMs + offsetMs + depth * (long) intervalUs / 1000L;
+
+        if (queue.size() > depth) {
+            // Render loop aturat: es buida i es torna a començar des d'un keyframe
+            while (!queue.isEmpty()) free.addLast(queue.pollFirst());
+            overflow++;
+            if (delta) {
+                needKey = true;
+                lastSeq = seq;
+                return;
+            }
+        }
+        Frame f = free.isEmpty() ? new Frame() : free.pollFirst();
+        if (f.data.length < pixels.remaining()) f.data = new byte[Math.max(pixels.remaining(), 256)];
+        f.length = pixels.remaining();
+        pixels.get(pixels.position(), f.data, 0, f.length);
+        f.delta = delta;
+        f.seq = seq;
+        f.playAtMs = playAtMs;
+        queue.addLast(f);
+        lastSeq = seq;
+    }
+
+    /**
+     * Aplica al framebuffer els frames que toquen fins a {@code nowMs}, en ordre. Només l'últim
+     * es veu: els anteriors ja fan tard i compten com a descartats.
+     *
+     * @param nowMs       instant actual (rellotge local)
+     * @param fb          dades del framebuffer (amb l'últim frame del flux)
+     * @param strideBytes bytes per fila del framebuffer
+     * @return true si el framebuffer ha canviat (cal fer un swap)
+     */
+    synchronized boolean present(long nowMs, ByteBuffer fb, int strideBytes) {
+        int applied = 0;
+        while (!queue.isEmpty() && queue.peekFirst().playAtMs <= nowMs) {
+            Frame f = queue.pollFirst();
+            try {
+                if (f.delta) {
+                    FrameDelta.apply(ByteBuffer.wrap(f.data, 0, f.length), fb, rowBytes, strideBytes);
+                } else if (strideBytes == rowBytes) {
+                    fb.put(0, f.data, 0, frameBytes);
+                } else {
+                    for (int y = 0, rows = frameBytes / rowBytes; y < rows; y++) {
+                        fb.put(y * strideBytes, f.data, y * rowBytes, rowBytes);
+                    }
+                }
+                applied++;
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                // Trams malmesos: el framebuffer ja no és fiable fins al keyframe següent
+                while (!queue.isEmpty()) free.addLast(queue.pollFirst());
+                needKey = true;
+                broken++;
+            }
+            free.addLast(f);
+        }
+        if (applied == 0) return false;
+        late += applied - 1;
+        shown++;
+        return true;
+    }
+
+    /** @return instant (rellotge local) en què toca el pròxim frame, o {@link Long#MAX_VALUE} si no n'hi ha cap */
+    synchronized long nextPlayAtMs() {
+        return queue.isEmpty() ? Long.MAX_VALUE : queue.peekFirst().playAtMs;
+    }
+
+    /** @return true mentre arribin frames (o no faci més de {@code holdMs} de l'últim) */
+    synchronized boolean isAliveAt(long nowMs) {
+        return nowMs - lastReceivedMs < holdMs;
+    }
+
+    /** @return resum de mètriques per a logs */
+    synchronized String stats() {
+        return "rebuts=" + received + " (" + (received == 0 ? 0 : bytesReceived / received) + " B/frame)"
+                + " mostrats=" + shown + " tard=" + late + " desbordats=" + overflow
+                + " cadena_trencada=" + broken + " buffer=" + queue.size() + "/" + (depth + 1)
+                + " " + (synced ? clock : "rellotge=local");
+    }
+}
@@ -0,0 +1,97 @@
+package com.project.client;
+
+import com.piomatter.FrameStats;
+import com.piomatter.FrameStats.Stage;
+
+import org.json.JSONObject;
+
+import java.util.Locale;
+
+/**
+ * Informe periòdic del client cap al servidor (heartbeat).
+ *
+ * Cada {@link #next} resumeix la finestra des de l'informe anterior: FPS real (frames / temps),
+ * p99 del temps de frame, percentatge de frames que han passat del termini, missatges pendents
+ * de descodificar, heap lliure i l'últim contingut que s'ha aplicat al panell. El servidor el
+ * desa per client i el mostra amb /stats.
+ *
+ * {@link #next} només s'ha de cridar des d'un sol fil (guarda l'estat de la finestra);
+ * {@link #applied} el crida el render loop.
+ */
+final class Telemetry {
+
+    /** Tipus del missatge. */
+    static final String TYPE = "telemetry";
+
+    /** Contingut aplicat al panell i quan. */
+    private record Applied(String what, long atMs) {}
+
+    private final FrameStats frames;
+    private final DecodeWorker decoder;
+    private final int fpsCap;
+    private volatile Applied applied = new Applied("none", System.currentTimeMillis());
+
+    // Finestra (només el fil que crida next)
+    private final long[] bucketsBefore = new long[FrameStats.BUCKETS];
+    private final long[] bucketsNow = new long[FrameStats.BUCKETS];
+    private long framesBefore = 0L, droppedBefore = 0L, windowStartNs = System.nanoTime();
+
+    /**
+     * @param frames  histogrames del render loop
+     * @param decoder fil de descodificació (cua pendent)
+     * @param fpsCap  FPS objectiu del render loop
+     */
+    Telemetry(FrameStats frames, DecodeWorker decoder, int fpsCap) {
+        this.frames = frames;
+        this.decoder = decoder;
+        this.fpsCap = fpsCap;
+    }
+
+    /**
+     * Anota el contingut que el render loop acaba d'aplicar (només quan canvia).
+     *
+     * @param s     estat nou
+     * @param nowMs instant
+     */
+    void applied(DisplayState s, long nowMs) {
+        String what = s.mode().name().toLowerCase(Locale.ROOT);
+        if (s.stream() != null) what += ":" + s.stream().name();
+        applied = new Applied(what, nowMs);
+    }
+
+    /** @return el missatge de la finestra que acaba ara */
+    String next() {
+        long nowNs = System.nanoTime();
+        long f = frames.frames(), d = frames.droppedFrames();
+        frames.copyBuckets(Stage.FRAME, bucketsNow);
+
+        long windowFrames = f - framesBefore;
+        double seconds = Math.max(1e-3, (nowNs - windowStartNs) / 1e9);
+        double dropPct = windowFrames > 0 ? 100.0 * (d - droppedBefore) / windowFrames : 0.0;
+        long p99Ns = FrameStats.percentileNs(bucketsNow, bucketsBefore, 99);
+
+        System.arraycopy(bucketsNow, 0, bucketsBefore, 0, FrameStats.BUCKETS);
+        framesBefore = f;
+        droppedBefore = d;
+        windowStartNs = nowNs;
+
+        Runtime rt = Runtime.getRuntime();
+        long heapFree = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+        Applied a = applied;
+        return new JSONObject()
+                .put("type", TYPE)
+                .put("fps", round1(windowFrames / seconds))
+                .put("cap", fpsCap)
+                .put("p99_ms", round1(p99Ns / 1e6))
+                .put("drop_pct", round1(dropPct))
+                .put("backlog", decoder.backlog())
+                .put("heap_free_mb", heapFree >> 20)
+                .put("last", a.what())
+                .put("last_age_ms", Math.max(0L, System.currentTimeMillis() - a.atMs()))
+                .toString();
+    }
+
+    private static double round1(double v) {
+        return Math.round(v * 10.0) / 10.0;
+    }
+}
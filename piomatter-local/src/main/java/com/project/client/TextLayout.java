@@ -0,0 +1,216 @@
+package com.project.client;
+
+import com.piomatter.GlyphAtlas;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maquetació (word-wrap) d'un missatge dins d'una àrea del panell.
+ *
+ * El càlcul és lineal: cada paraula es mesura un sol cop sumant els avanços de l'atlas, i
+ * l'amplada de la línia es porta acumulada (no es tornen a mesurar cadenes candidates).
+ * S'atura quan s'omple l'última línia visible, de manera que un text enganxat de milers de
+ * caràcters només costa el que es veu.
+ *
+ * El resultat és immutable i es pot guardar a la {@link Cache} per (text, font, àrea).
+ *
+ * @param lines      línies a dibuixar, de dalt a baix
+ * @param truncated  true si ha quedat text fora de l'àrea
+ */
+record TextLayout(List<String> lines, boolean truncated) {
+
+    static final TextLayout EMPTY = new TextLayout(List.of(), false);
+
+    private static final String ELLIPSIS = "…";
+
+    /**
+     * Fa word-wrap respectant amplada i alçada disponibles. Una paraula que no hi cap sola
+     * es trunca amb ‘…’.
+     *
+     * @param s    text (els salts de línia separen paràgrafs)
+     * @param font atlas amb els avanços de la font
+     * @param maxW amplada disponible en píxels
+     * @param maxH alçada disponible en píxels
+     * @return maquetació immutable
+     */
+    static TextLayout compute(String s, GlyphAtlas font, int maxW, int maxH) {
+        if (s == null || s.isEmpty() || maxW <= 0 || maxH <= 0) return EMPTY;
+
+        Builder b = new Builder(s, font, maxW, Math.max(1, maxH / font.getLineHeight()));
+
+        // Els salts de línia finals no generen línies buides
+        int end = s.length();
+        while (end > 0 && isLineBreak(s.charAt(end - 1))) end--;
+
+        int i = 0;
+        while (i < end && !b.full()) {
+            // Paràgraf des de i fins al següent salt de línia (el troba el mateix wrap)
+            i = b.wrapParagraph(i, end);
+            if (b.full() || i >= end) break;
+
+            // Salta el separador (\r\n compta com un de sol)
+            i += (s.charAt(i) == '\r' && i + 1 < end && s.charAt(i + 1) == '\n') ? 2 : 1;
+        }
+        return new TextLayout(List.copyOf(b.out), hasContent(s, i, end));
+    }
+
+    /** Estat d'una maquetació en curs. */
+    private static final class Builder {
+        final String s;
+        final GlyphAtlas font;
+        final int maxW, maxLines, spaceW;
+        final ArrayList<String> out;
+
+        Builder(String s, GlyphAtlas font, int maxW, int maxLines) {
+            this.s = s;
+            this.font = font;
+            this.maxW = maxW;
+            this.maxLines = maxLines;
+            this.spaceW = font.charWidth(' ');
+            this.out = new ArrayList<>(Math.min(maxLines, 16));
+        }
+
+        boolean full() { return out.size() >= maxLines; }
+
+        /**
+         * Afegeix les línies del paràgraf que comença a {@code from} (acaba al següent salt
+         * de línia o a {@code end}). Cada caràcter es visita un sol cop.
+         *
+         * @return posició del salt de línia que tanca el paràgraf, o on s'ha aturat si
+         *         s'han acabat les línies
+         */
+        int wrapParagraph(int from, int end) {
+            int lineStart = -1, lineEnd = -1; // rang de la línia actual (-1 = buida)
+            int lineW = 0;
+
+            int i = from;
+            while (i < end) {
+                // Següent paraula [ws, we)
+                while (i < end && isSpace(s.charAt(i))) i++;
+                if (i >= end || isLineBreak(s.charAt(i))) break;
+                int ws = i, wordW = 0;
+                char c;
+                while (i < end && !isSpace(c = s.charAt(i)) && !isLineBreak(c)) {
+                    wordW += font.charWidth(c);
+                    i++;
+                }
+                int we = i;
+
+                if (lineStart < 0) {
+                    if (wordW <= maxW) {
+                        lineStart = ws;
+                        lineEnd = we;
+                        lineW = wordW;
+                    } else {
+                        // Paraula massa llarga per a una línia sola: es trunca amb ‘…’
+                        out.add(truncateWithEllipsis(s, ws, we, font, maxW));
+                        if (full()) return we;
+                    }
+                } else if (lineW + spaceW + wordW <= maxW) {
+                    lineEnd = we;
+                    lineW += spaceW + wordW;
+                } else {
+                    out.add(joinWords(s, lineStart, lineEnd));
+                    if (full()) return ws;
+                    lineStart = -1;
+                    i = ws; // la paraula es torna a provar en una línia nova
+                }
+            }
+            if (lineStart >= 0) out.add(joinWords(s, lineStart, lineEnd));
+            else if (i == from) out.add(""); // paràgraf buit: línia en blanc
+            return i;
+        }
+    }
+
+    /** @return true si a {@code s[from, to)} hi ha algun caràcter visible */
+    private static boolean hasContent(String s, int from, int to) {
+        for (int k = from; k < to; k++) {
+            char c = s.charAt(k);
+            if (!isSpace(c) && !isLineBreak(c)) return true;
+        }
+        return false;
+    }
+
+    /** Línia amb les paraules de {@code s[from, to)} separades per un sol espai. */
+    private static String joinWords(String s, int from, int to) {
+        // Cas habitual: un sol espai entre paraules, la línia és un substring
+        boolean simple = true;
+        for (int k = from; k < to && simple; k++) {
+            char c = s.charAt(k);
+            if (c == '\t' || (c == ' ' && k + 1 < to && s.charAt(k + 1) == ' ')) simple = false;
+        }
+        if (simple) return s.substring(from, to);
+
+        StringBuilder sb = new StringBuilder(to - from);
+        boolean inSpace = false;
+        for (int k = from; k < to; k++) {
+            char c = s.charAt(k);
+            if (isSpace(c)) {
+                inSpace = true;
+            } else {
+                if (inSpace) sb.append(' ');
+                inSpace = false;
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Trunca una cadena a maxW i hi afegeix ‘…’ si cal. */
+    static String truncateWithEllipsis(String s, GlyphAtlas font, int maxW) {
+        return truncateWithEllipsis(s, 0, s.length(), font, maxW);
+    }
+
+    /** Trunca {@code s[from, to)} a maxW (una sola passada, s'atura en sobrepassar maxW). */
+    private static String truncateWithEllipsis(String s, int from, int to, GlyphAtlas font, int maxW) {
+        int budget = maxW - font.stringWidth(ELLIPSIS);
+        int w = 0, cut = -1;
+        for (int k = from; k < to; k++) {
+            w += font.charWidth(s.charAt(k));
+            if (cut < 0 && w > budget) cut = k;   // últim caràcter que cabria amb ‘…’
+            if (w > maxW) return s.substring(from, cut) + ELLIPSIS;
+        }
+        return s.substring(from, to);
+    }
+
+    /** Espais entre paraules (com {@code \s} sense els salts de línia). */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    /** Salts de línia (com {@code \R}). */
+    private static boolean isLineBreak(char c) {
+        return c == '\n' || c == '\r' || c == '\u000B' || c == '\f'
+                || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * Cache LRU de maquetacions per (text, font, amplada, alçada): un missatge que es mostra
+     * durant segons es maqueta un sol cop. És segura per a ús concurrent.
+     */
+    static final class Cache {
+
+        private record Key(String text, GlyphAtlas font, int maxW, int maxH) {}
+
+        private final LinkedHashMap<Key, TextLayout> lru;
+
+        /** @param capacity maquetacions guardades com a màxim */
+        Cache(int capacity) {
+            final int cap = Math.max(1, capacity);
+            this.lru = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, TextLayout> eldest) {
+                    return size() > cap;
+                }
+            };
+        }
+
+        /** @return la maquetació guardada o, si no n'hi ha, la calcula i la guarda */
+        synchronized TextLayout get(String text, GlyphAtlas font, int maxW, int maxH) {
+            return lru.computeIfAbsent(new Key(text, font, maxW, maxH), k -> compute(k.text, k.font, k.maxW, k.maxH));
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.project.client;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -18,20 +20,23 @@ public class UtilsWS {
     private WebSocketClient client;
     private Consumer<String> onOpenCallBack = null;
     private Consumer<String> onMessageCallBack = null;
+    private Consumer<ByteBuffer> onBinaryMessageCallBack = null;
     private Consumer<String> onCloseCallBack = null;
     private Consumer<String> onErrorCallBack = null;
     private String location = "";
+    private Map<String, String> headers = null;
     private static AtomicBoolean exitRequested = new AtomicBoolean(false);
     private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
-    private UtilsWS(String location) {
+    private UtilsWS(String location, Map<String, String> headers) {
         this.location = location;
+        this.headers = headers;
         createNewWebSocketClient();
     }
 
     private void createNewWebSocketClient() {
         try {
-            this.client = new WebSocketClient(new URI(location), new Draft_6455()) {
+            this.client = new WebSocketClient(new URI(location), new Draft_6455(), headers) {
                 @Override
                 public void onOpen(ServerHandshake handshake) {
                     String message = "WS connected to: " + getURI();
@@ -48,6 +53,13 @@ public class UtilsWS {
                     }
                 }
 
+                @Override
+                public void onMessage(ByteBuffer bytes) {
+                    if (onBinaryMessageCallBack != null) {
+                        onBinaryMessageCallBack.accept(bytes);
+                    }
+                }
+
                 @Override
                 public void onClose(int code, String reason, boolean remote) {
                     String message = "WS closed connection from: " + getURI() + " with reason: " + reason;
@@ -99,8 +111,12 @@ public class UtilsWS {
     }
 
     public static UtilsWS getSharedInstance(String location) {
+        return getSharedInstance(location, null);
+    }
+
+    public static UtilsWS getSharedInstance(String location, Map<String, String> headers) {
         if (sharedInstance == null) {
-            sharedInstance = new UtilsWS(location);
+            sharedInstance = new UtilsWS(location, headers);
         }
         return sharedInstance;
     }
@@ -113,6 +129,10 @@ public class UtilsWS {
         this.onMessageCallBack = callBack;
     }
 
+    public void onBinaryMessage(Consumer<ByteBuffer> callBack) {
+        this.onBinaryMessageCallBack = callBack;
+    }
+
     public void onClose(Consumer<String> callBack) {
         this.onCloseCallBack = callBack;
     }
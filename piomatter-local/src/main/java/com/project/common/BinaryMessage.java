@@ -0,0 +1,232 @@
+package com.project.common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Missatge binari WebSocket compartit entre servidor i client.
+ *
+ * Evita el Base64 dins de JSON: la imatge viatja tal qual després d'una capçalera compacta
+ * (big-endian):
+ *
+ *   offset  mida  camp
+ *   0       1     magic 'M' (0x4D)
+ *   1       1     versió (1)
+ *   2       1     tipus ({@link #T_IMAGE}, ...)
+ *   3       1     flags ({@link #F_DELTA}; la resta reservats, 0)
+ *   4       4     ttl_ms
+ *   8       2     llargada del nom (bytes UTF-8)
+ *   10      n     nom UTF-8
+ *   10+n    4     llargada del contingut
+ *   14+n    m     contingut (p.ex. fitxer PNG/JPG)
+ *
+ * Contingut de {@link #T_RAW_RGB888} (frame ja renderitzat pel servidor):
+ *
+ *   0       2     amplada
+ *   2       2     alçada
+ *   4       w*h*3 píxels RGB888 empaquetats, fila a fila, brillantor ja aplicada
+ *
+ * Contingut de {@link #T_STREAM_FRAME} (un frame d'un flux continu, /stream):
+ *
+ *   0       2     amplada
+ *   2       2     alçada
+ *   4       4     identificador del flux
+ *   8       4     número de frame dins del flux
+ *   12      8     instant de presentació (rellotge del servidor, ms)
+ *   20      4     interval entre frames (µs)
+ *   24      w*h*3 píxels RGB888 (com {@link #T_RAW_RGB888})
+ *
+ * Amb {@link #F_DELTA}, els píxels són trams {@link FrameDelta} respecte al frame anterior
+ * del flux (número - 1) en lloc del frame sencer (keyframe).
+ *
+ * Al flux, el ttl_ms indica quant de temps es manté l'últim frame si deixen d'arribar-ne.
+ *
+ * Els clients que entenen aquest format ho indiquen al handshake amb la capçalera
+ * {@link #HANDSHAKE_HEADER}; la resta continuen rebent JSON de text.
+ */
+public final class BinaryMessage {
+
+    /** Capçalera HTTP del handshake amb què el client anuncia suport binari. */
+    public static final String HANDSHAKE_HEADER = "X-MatrixPlay-Binary";
+    /** Versió del format que entén aquest codi. */
+    public static final String HANDSHAKE_VERSION = "1";
+
+    public static final byte MAGIC = 0x4D; // 'M'
+    public static final byte VERSION = 1;
+
+    /** Fitxer d'imatge (PNG/JPG) tal qual. */
+    public static final byte T_IMAGE = 1;
+    /** Frame RGB888 ja ajustat al panell: el client el copia directament al framebuffer. */
+    public static final byte T_RAW_RGB888 = 2;
+    /** Frame d'un flux continu: el client el reprodueix a l'instant indicat (vegeu la capçalera). */
+    public static final byte T_STREAM_FRAME = 3;
+
+    /** Flag de {@link #T_STREAM_FRAME}: els píxels són un {@link FrameDelta} respecte al frame anterior. */
+    public static final byte F_DELTA = 0x01;
+
+    private static final int STREAM_HEADER = 24;
+
+    private static final int FIXED_HEADER = 4 + 4 + 2 + 4;
+
+    public final byte type;
+    public final byte flags;
+    public final int ttlMs;
+    public final String name;
+    /** Contingut: vista sobre el buffer rebut (sense còpia), només lectura. */
+    public final ByteBuffer content;
+
+    private BinaryMessage(byte type, byte flags, int ttlMs, String name, ByteBuffer content) {
+        this.type = type;
+        this.flags = flags;
+        this.ttlMs = ttlMs;
+        this.name = name;
+        this.content = content;
+    }
+
+    /**
+     * Codifica un missatge en un únic buffer (a punt per a {@code WebSocket.send(ByteBuffer)}).
+     *
+     * @param type    tipus de missatge
+     * @param ttlMs   temps de vida en ms
+     * @param name    nom a mostrar (pot ser null)
+     * @param content contingut
+     * @return buffer amb posició 0 i límit al final del missatge
+     */
+    public static ByteBuffer encode(byte type, int ttlMs, String name, byte[] content) {
+        ByteBuffer buf = header(type, (byte) 0, ttlMs, name, content.length);
+        return buf.put(content).flip();
+    }
+
+    /**
+     * Codifica un frame RGB888 ja renderitzat ({@link #T_RAW_RGB888}).
+     *
+     * @param ttlMs  temps de vida en ms
+     * @param name   nom a mostrar (pot ser null)
+     * @param width  amplada del frame
+     * @param height alçada del frame
+     * @param rgb888 {@code width * height * 3} bytes, fila a fila sense padding
+     * @return buffer a punt per enviar
+     */
+    public static ByteBuffer encodeRaw(int ttlMs, String name, int width, int height, byte[] rgb888) {
+        if (width <= 0 || height <= 0 || width > 0xFFFF || height > 0xFFFF) {
+            throw new IllegalArgumentException("Mida de frame invàlida: " + width + "x" + height);
+        }
+        if (rgb888.length != width * height * 3) throw new IllegalArgumentException("Mida de píxels incorrecta");
+        ByteBuffer buf = header(T_RAW_RGB888, (byte) 0, ttlMs, name, 4 + rgb888.length);
+        buf.putShort((short) width).putShort((short) height).put(rgb888);
+        return buf.flip();
+    }
+
+    /**
+     * Codifica un frame de flux ({@link #T_STREAM_FRAME}).
+     *
+     * @param ttlMs      temps que es manté l'últim frame si el flux s'interromp
+     * @param name       nom del flux (pot ser null)
+     * @param width      amplada del frame
+     * @param height     alçada del frame
+     * @param streamId   identificador del flux (canvia a cada /stream)
+     * @param seq        número de frame dins del flux
+     * @param ptsMs      instant de presentació segons el rellotge del servidor
+     * @param intervalUs interval nominal entre frames
+     * @param delta      true si {@code pixels} és un {@link FrameDelta} respecte al frame anterior
+     * @param pixels     frame sencer ({@code width * height * 3} bytes, fila a fila sense padding) o trams
+     * @return buffer a punt per enviar
+     */
+    public static ByteBuffer encodeStream(int ttlMs, String name, int width, int height, int streamId,
+                                          int seq, long ptsMs, int intervalUs, boolean delta, byte[] pixels) {
+        if (width <= 0 || height <= 0 || width > 0xFFFF || height > 0xFFFF) {
+            throw new IllegalArgumentException("Mida de frame invàlida: " + width + "x" + height);
+        }
+        if (!delta && pixels.length != width * height * 3) throw new IllegalArgumentException("Mida de píxels incorrecta");
+        ByteBuffer buf = header(T_STREAM_FRAME, delta ? F_DELTA : 0, ttlMs, name, STREAM_HEADER + pixels.length);
+        buf.putShort((short) width).putShort((short) height)
+           .putInt(streamId).putInt(seq).putLong(ptsMs).putInt(intervalUs)
+           .put(pixels);
+        return buf.flip();
+    }
+
+    /** Reserva el buffer complet i hi escriu la capçalera; queda a punt per escriure el contingut. */
+    private static ByteBuffer header(byte type, byte flags, int ttlMs, String name, int contentLength) {
+        byte[] nameBytes = (name == null ? "" : name).getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > 0xFFFF) throw new IllegalArgumentException("Nom massa llarg");
+        ByteBuffer buf = ByteBuffer.allocate(FIXED_HEADER + nameBytes.length + contentLength);
+        buf.put(MAGIC).put(VERSION).put(type).put(flags)
+           .putInt(ttlMs)
+           .putShort((short) nameBytes.length).put(nameBytes)
+           .putInt(contentLength);
+        return buf;
+    }
+
+    /** @return amplada d'un {@link #T_RAW_RGB888} o {@link #T_STREAM_FRAME} */
+    public int rawWidth() { return Short.toUnsignedInt(content.getShort(0)); }
+
+    /** @return alçada d'un {@link #T_RAW_RGB888} o {@link #T_STREAM_FRAME} */
+    public int rawHeight() { return Short.toUnsignedInt(content.getShort(2)); }
+
+    /** @return píxels RGB888 d'un {@link #T_RAW_RGB888}, {@code amplada * alçada * 3} bytes (vista sense còpia) */
+    public ByteBuffer rawPixels() { return content.slice(4, content.limit() - 4); }
+
+    /** @return identificador del flux d'un {@link #T_STREAM_FRAME} */
+    public int streamId() { return content.getInt(4); }
+
+    /** @return número de frame d'un {@link #T_STREAM_FRAME} */
+    public int streamSeq() { return content.getInt(8); }
+
+    /** @return instant de presentació (rellotge del servidor) d'un {@link #T_STREAM_FRAME} */
+    public long streamPtsMs() { return content.getLong(12); }
+
+    /** @return interval nominal entre frames (µs) d'un {@link #T_STREAM_FRAME} */
+    public int streamIntervalUs() { return content.getInt(20); }
+
+    /** @return true si és un {@link #T_STREAM_FRAME} diferencial ({@link #F_DELTA}) */
+    public boolean isDelta() { return (flags & F_DELTA) != 0; }
+
+    /** @return píxels RGB888 d'un {@link #T_STREAM_FRAME}, o els trams si {@link #isDelta()} (vista sense còpia) */
+    public ByteBuffer streamPixels() { return content.slice(STREAM_HEADER, content.limit() - STREAM_HEADER); }
+
+    /**
+     * Descodifica un missatge. El contingut retornat comparteix memòria amb {@code buf}.
+     * Dels frames ({@link #T_RAW_RGB888}, {@link #T_STREAM_FRAME}) també comprova la mida dels píxels.
+     *
+     * @param buf buffer rebut (no es modifica la seva posició)
+     * @return el missatge
+     * @throws IllegalArgumentException si el format no és vàlid
+     */
+    public static BinaryMessage decode(ByteBuffer buf) {
+        ByteBuffer b = buf.duplicate();
+        if (b.remaining() < FIXED_HEADER) throw new IllegalArgumentException("Missatge binari massa curt");
+        if (b.get() != MAGIC) throw new IllegalArgumentException("Magic incorrecte");
+        byte version = b.get();
+        if (version != VERSION) throw new IllegalArgumentException("Versió no suportada: " + version);
+        byte type = b.get();
+        byte flags = b.get();
+        int ttl = b.getInt();
+
+        int nameLen = Short.toUnsignedInt(b.getShort());
+        if (b.remaining() < nameLen + 4) throw new IllegalArgumentException("Capçalera truncada");
+        String name = StandardCharsets.UTF_8.decode(b.slice(b.position(), nameLen)).toString();
+        b.position(b.position() + nameLen);
+
+        int len = b.getInt();
+        if (len < 0 || len > b.remaining()) throw new IllegalArgumentException("Contingut truncat");
+        ByteBuffer content = b.slice(b.position(), len).asReadOnlyBuffer();
+        checkFrame(type, flags, content);
+        return new BinaryMessage(type, flags, ttl, name, content);
+    }
+
+    /**
+     * Els frames han de portar exactament {@code amplada * alçada * 3} bytes de píxels (els trams,
+     * com a mínim la capçalera): un missatge truncat no ha d'arribar al render loop.
+     */
+    private static void checkFrame(byte type, byte flags, ByteBuffer content) {
+        int header = (type == T_RAW_RGB888) ? 4 : (type == T_STREAM_FRAME) ? STREAM_HEADER : -1;
+        if (header < 0) return;
+        if (content.limit() < header) throw new IllegalArgumentException("Capçalera del frame truncada");
+        if (type == T_STREAM_FRAME && (flags & F_DELTA) != 0) return;
+        long expected = (long) Short.toUnsignedInt(content.getShort(0)) * Short.toUnsignedInt(content.getShort(2)) * 3;
+        if (content.limit() - header != expected) {
+            throw new IllegalArgumentException("Mida de píxels incorrecta: " + (content.limit() - header)
+                    + " bytes, calen " + expected);
+        }
+    }
+}
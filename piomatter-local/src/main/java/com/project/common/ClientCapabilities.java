@@ -0,0 +1,99 @@
+package com.project.common;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Capacitats que un client anuncia al handshake, perquè el servidor li adapti el contingut.
+ *
+ * Viatgen com a capçaleres HTTP del handshake WebSocket, totes opcionals:
+ *
+ *   {@value #PANEL_HEADER}: 128x64     mida del panell (o del llenç, si en té diversos encadenats)
+ *   {@value #FPS_HEADER}: 60           FPS màxim del render loop
+ *   {@value #ENCODING_HEADER}: raw     format preferit de les imatges ({@link Encoding})
+ *
+ * Un client que no envia res rep el mateix que fins ara.
+ *
+ * @param panelWidth  amplada del panell (0 = desconeguda)
+ * @param panelHeight alçada del panell (0 = desconeguda)
+ * @param maxFps      FPS màxim (0 = sense límit anunciat)
+ * @param encoding    format preferit de les imatges
+ */
+public record ClientCapabilities(int panelWidth, int panelHeight, int maxFps, Encoding encoding) {
+
+    public static final String PANEL_HEADER = "X-MatrixPlay-Panel";
+    public static final String FPS_HEADER = "X-MatrixPlay-Max-Fps";
+    public static final String ENCODING_HEADER = "X-MatrixPlay-Encoding";
+
+    /** Format preferit de les imatges estàtiques (els clients binaris). */
+    public enum Encoding {
+        /** El que digui el servidor (/prerender). */
+        AUTO,
+        /** El fitxer (PNG/JPG), reduït a la mida del panell si és més gran: menys bytes. */
+        FILE,
+        /** Frame RGB888 ja ajustat al panell: sense descodificar res al client, per a CPUs lentes. */
+        RAW
+    }
+
+    /** Cap capacitat anunciada. */
+    public static final ClientCapabilities UNKNOWN = new ClientCapabilities(0, 0, 0, Encoding.AUTO);
+
+    /** @return true si el client ha anunciat la mida del panell */
+    public boolean hasPanel() { return panelWidth > 0 && panelHeight > 0; }
+
+    /**
+     * Afegeix les capçaleres del handshake.
+     *
+     * @param headers capçaleres del client WebSocket
+     */
+    public void putHeaders(Map<String, String> headers) {
+        if (hasPanel()) headers.put(PANEL_HEADER, panelWidth + "x" + panelHeight);
+        if (maxFps > 0) headers.put(FPS_HEADER, Integer.toString(maxFps));
+        if (encoding != Encoding.AUTO) headers.put(ENCODING_HEADER, encoding.name().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Llegeix les capçaleres del handshake; les que falten o no són vàlides s'ignoren.
+     *
+     * @param header valor d'una capçalera pel seu nom (null o buit si no hi és)
+     * @return les capacitats anunciades
+     */
+    public static ClientCapabilities fromHeaders(Function<String, String> header) {
+        int w = 0, h = 0, fps = 0;
+        Encoding enc = Encoding.AUTO;
+        String panel = header.apply(PANEL_HEADER);
+        if (panel != null && !panel.isBlank()) {
+            String[] wh = panel.trim().toLowerCase(Locale.ROOT).split("x");
+            try {
+                if (wh.length == 2) {
+                    int pw = Integer.parseInt(wh[0].trim()), ph = Integer.parseInt(wh[1].trim());
+                    if (pw > 0 && ph > 0 && pw <= 4096 && ph <= 4096) {
+                        w = pw;
+                        h = ph;
+                    }
+                }
+            } catch (NumberFormatException ignored) {
+                // mida no vàlida: desconeguda
+            }
+        }
+        String f = header.apply(FPS_HEADER);
+        if (f != null && f.trim().matches("\\d{1,4}")) fps = Integer.parseInt(f.trim());
+        String e = header.apply(ENCODING_HEADER);
+        if (e != null && !e.isBlank()) {
+            try {
+                enc = Encoding.valueOf(e.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ignored) {
+                // format desconegut: el del servidor
+            }
+        }
+        return new ClientCapabilities(w, h, fps, enc);
+    }
+
+    @Override
+    public String toString() {
+        return (hasPanel() ? panelWidth + "x" + panelHeight : "?x?")
+                + (maxFps > 0 ? " ≤" + maxFps + "fps" : "")
+                + " " + encoding.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,125 @@
+package com.project.common;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Codificació diferencial entre dos frames RGB888 consecutius.
+ *
+ * Només viatgen els trams de bytes que canvien, com una seqüència de
+ *
+ *   varint  bytes iguals a saltar (des del final del tram anterior)
+ *   varint  llargada del tram
+ *   n       bytes nous
+ *
+ * on varint és un enter sense signe en LEB128 (7 bits per byte). Els trams separats per
+ * pocs bytes iguals s'uneixen, perquè la capçalera d'un tram nou costaria més que repetir-los.
+ * Un frame idèntic a l'anterior es codifica amb 0 bytes.
+ *
+ * Les posicions són dins del frame sense padding ({@code amplada * 3} bytes per fila);
+ * {@link #apply} les tradueix a l'stride del framebuffer destí.
+ */
+public final class FrameDelta {
+
+    /** Bytes iguals màxims que s'inclouen dins d'un tram per no obrir-ne un de nou. */
+    private static final int MERGE_GAP = 4;
+
+    private FrameDelta() {}
+
+    /**
+     * @param prev frame anterior
+     * @param cur  frame nou (de la mateixa mida)
+     * @return trams que transformen {@code prev} en {@code cur}
+     */
+    public static byte[] encode(byte[] prev, byte[] cur) {
+        if (prev.length != cur.length) throw new IllegalArgumentException("Frames de mida diferent");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int n = cur.length;
+        int end = 0; // final del tram anterior
+        int i = 0;
+        while (i < n) {
+            while (i < n && prev[i] == cur[i]) i++;
+            if (i >= n) break;
+            int start = i;
+            // Estén el tram mentre els trossos iguals siguin curts
+            int last = i; // últim byte diferent
+            while (i < n) {
+                if (prev[i] != cur[i]) {
+                    last = i;
+                    i++;
+                } else if (i - last > MERGE_GAP) {
+                    break;
+                } else {
+                    i++;
+                }
+            }
+            int len = last + 1 - start;
+            writeVarint(out, start - end);
+            writeVarint(out, len);
+            out.write(cur, start, len);
+            end = start + len;
+            i = end;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Aplica els trams sobre el frame anterior, que ha de ser ja a {@code dst}.
+     *
+     * @param delta       trams ({@link #encode}), de la posició a {@code limit}; no es modifica
+     * @param dst         framebuffer amb el frame anterior
+     * @param rowBytes    bytes útils per fila ({@code amplada * 3})
+     * @param strideBytes bytes per fila de {@code dst}
+     * @throws IllegalArgumentException si els trams surten del frame
+     */
+    public static void apply(ByteBuffer delta, ByteBuffer dst, int rowBytes, int strideBytes) {
+        ByteBuffer d = delta.duplicate();
+        int frameBytes = (dst.limit() / strideBytes) * rowBytes;
+        int pos = 0;
+        while (d.hasRemaining()) {
+            pos += readVarint(d);
+            int len = readVarint(d);
+            if (pos + (long) len > frameBytes || len > d.remaining()) {
+                throw new IllegalArgumentException("Tram fora del frame");
+            }
+            if (strideBytes == rowBytes) {
+                dst.put(pos, d, d.position(), len);
+            } else {
+                // Un tram pot creuar files: es parteix a cada final de fila
+                int p = pos, src = d.position(), left = len;
+                while (left > 0) {
+                    int y = p / rowBytes, x = p % rowBytes;
+                    int n = Math.min(left, rowBytes - x);
+                    dst.put(y * strideBytes + x, d, src, n);
+                    p += n;
+                    src += n;
+                    left -= n;
+                }
+            }
+            d.position(d.position() + len);
+            pos += len;
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static int readVarint(ByteBuffer b) {
+        int v = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (!b.hasRemaining()) throw new IllegalArgumentException("Varint truncat");
+            int x = b.get() & 0xFF;
+            v |= (x & 0x7F) << shift;
+            if ((x & 0x80) == 0) {
+                if (v < 0) throw new IllegalArgumentException("Varint fora de rang");
+                return v;
+            }
+        }
+        throw new IllegalArgumentException("Varint massa llarg");
+    }
+}
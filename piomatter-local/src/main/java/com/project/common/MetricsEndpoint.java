@@ -0,0 +1,110 @@
+package com.project.common;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Endpoint HTTP {@code /metrics} per a Prometheus, dins del mateix procés.
+ *
+ * Usa el servidor HTTP del JDK amb un sol fil propi: cada petició crida el {@code collector},
+ * que llegeix les mètriques en aquell moment (sense aturar el render loop ni el servidor
+ * WebSocket) i retorna el text ({@link PromText}).
+ *
+ * Està desactivat per defecte: s'engega amb {@code -D}{@value #PORT_PROPERTY}{@code =<port>}.
+ */
+public final class MetricsEndpoint implements AutoCloseable {
+
+    /** Propietat de sistema amb el port (0 o absent = desactivat). */
+    public static final String PORT_PROPERTY = "matrixplay.metrics.port";
+    /** Camí de les mètriques. */
+    public static final String PATH = "/metrics";
+
+    private final HttpServer http;
+    private final ExecutorService executor;
+
+    private MetricsEndpoint(HttpServer http, ExecutorService executor) {
+        this.http = http;
+        this.executor = executor;
+    }
+
+    /**
+     * Engega l'endpoint si la propietat {@value #PORT_PROPERTY} ho demana.
+     *
+     * @param collector genera el text de les mètriques a cada petició
+     * @return l'endpoint engegat, o null si està desactivat o no s'ha pogut obrir el port
+     */
+    public static MetricsEndpoint fromSystemProperties(Supplier<String> collector) {
+        int port = Integer.getInteger(PORT_PROPERTY, 0);
+        if (port <= 0) return null;
+        try {
+            MetricsEndpoint m = start(port, collector);
+            System.out.println("Mètriques: http://localhost:" + port + PATH);
+            return m;
+        } catch (IOException e) {
+            System.out.println("No s'ha pogut obrir el port de mètriques " + port + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Engega l'endpoint.
+     *
+     * @param port      port TCP (totes les interfícies)
+     * @param collector genera el text de les mètriques a cada petició
+     * @return l'endpoint engegat
+     * @throws IOException si no es pot obrir el port
+     */
+    public static MetricsEndpoint start(int port, Supplier<String> collector) throws IOException {
+        HttpServer http = HttpServer.create(new InetSocketAddress(port), 0);
+        http.createContext(PATH, ex -> handle(ex, collector));
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "metrics-http");
+            t.setDaemon(true);
+            return t;
+        });
+        http.setExecutor(executor);
+        http.start();
+        return new MetricsEndpoint(http, executor);
+    }
+
+    private static void handle(HttpExchange ex, Supplier<String> collector) throws IOException {
+        try (ex) {
+            if (!"GET".equalsIgnoreCase(ex.getRequestMethod()) && !"HEAD".equalsIgnoreCase(ex.getRequestMethod())) {
+                ex.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body;
+            try {
+                body = collector.get().getBytes(StandardCharsets.UTF_8);
+            } catch (RuntimeException e) {
+                ex.sendResponseHeaders(500, -1);
+                return;
+            }
+            ex.getResponseHeaders().set("Content-Type", PromText.CONTENT_TYPE);
+            boolean head = "HEAD".equalsIgnoreCase(ex.getRequestMethod());
+            ex.sendResponseHeaders(200, head ? -1 : body.length);
+            if (!head) {
+                try (OutputStream os = ex.getResponseBody()) {
+                    os.write(body);
+                }
+            }
+        }
+    }
+
+    /** @return port on escolta */
+    public int port() { return http.getAddress().getPort(); }
+
+    @Override
+    public void close() {
+        http.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,132 @@
+package com.project.common;
+
+import com.piomatter.FrameStats;
+import com.piomatter.FrameStats.Stage;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Construeix una resposta en el format de text de Prometheus (versió 0.0.4).
+ *
+ * Cada mètrica és una família ({@code # HELP} + {@code # TYPE}) seguida de les seves mostres;
+ * les mostres d'una família han d'anar juntes, així que primer es declara la família amb
+ * {@link #family} i després s'hi afegeixen totes les mostres (p.ex. una per client).
+ *
+ * Els temps s'exporten en segons i els comptadors acumulats acaben en {@code _total}, com
+ * demanen les convencions de Prometheus.
+ */
+public final class PromText {
+
+    /** Content-Type de la resposta HTTP. */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /** Límits (segons) dels histogrames de temps: de 100 µs a 1 s, amb 1/60 s al mig. */
+    public static final double[] TIME_BUCKETS = {
+            0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.0167, 0.025, 0.05, 0.1, 0.25, 1.0
+    };
+
+    private final StringBuilder sb = new StringBuilder(4096);
+
+    /**
+     * Declara una família de mètriques.
+     *
+     * @param name nom (p.ex. {@code matrixplay_server_clients})
+     * @param type {@code gauge}, {@code counter}, {@code histogram} o {@code summary}
+     * @param help descripció d'una línia
+     * @return aquest mateix objecte
+     */
+    public PromText family(String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    /**
+     * Afegeix una mostra a la família declarada just abans.
+     *
+     * @param name   nom de la mostra (el de la família, o amb sufix {@code _bucket}/{@code _sum}/{@code _count})
+     * @param value  valor
+     * @param labels parelles nom, valor
+     * @return aquest mateix objecte
+     */
+    public PromText sample(String name, double value, String... labels) {
+        sb.append(name);
+        if (labels.length > 0) {
+            sb.append('{');
+            for (int i = 0; i + 1 < labels.length; i += 2) {
+                if (i > 0) sb.append(',');
+                sb.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+            }
+            sb.append('}');
+        }
+        sb.append(' ').append(format(value)).append('\n');
+        return this;
+    }
+
+    /**
+     * Una família declarada amb un sol valor.
+     *
+     * @return aquest mateix objecte
+     */
+    public PromText gauge(String name, String help, double value) {
+        return family(name, "gauge", help).sample(name, value);
+    }
+
+    /**
+     * Una família de comptador amb un sol valor.
+     *
+     * @return aquest mateix objecte
+     */
+    public PromText counter(String name, String help, double value) {
+        return family(name, "counter", help).sample(name, value);
+    }
+
+    /**
+     * Mostres d'histograma d'una etapa de {@link FrameStats}, amb els límits {@link #TIME_BUCKETS}.
+     * Els comptes es llegeixen d'una sola passada pels buckets, de manera que són acumulatius
+     * encara que el render loop continuï escrivint. La família s'ha d'haver declarat abans
+     * amb tipus {@code histogram}.
+     *
+     * @param name   nom de la família
+     * @param stats  histogrames
+     * @param stage  etapa
+     * @param labels etiquetes addicionals (parelles nom, valor)
+     * @return aquest mateix objecte
+     */
+    public PromText histogram(String name, FrameStats stats, Stage stage, String... labels) {
+        String[] withLe = new String[labels.length + 2];
+        System.arraycopy(labels, 0, withLe, 0, labels.length);
+        withLe[labels.length] = "le";
+
+        long cumulative = 0L;
+        int b = 0;
+        for (double le : TIME_BUCKETS) {
+            long limitNs = Math.round(le * 1e9);
+            for (; b < FrameStats.BUCKETS && FrameStats.bucketUpperNs(b) <= limitNs; b++) {
+                cumulative += stats.bucketCount(stage, b);
+            }
+            withLe[labels.length + 1] = format(le);
+            sample(name + "_bucket", cumulative, withLe);
+        }
+        for (; b < FrameStats.BUCKETS; b++) cumulative += stats.bucketCount(stage, b);
+        withLe[labels.length + 1] = "+Inf";
+        sample(name + "_bucket", cumulative, withLe);
+        sample(name + "_sum", stats.sumNs(stage) / 1e9, labels);
+        return sample(name + "_count", cumulative, labels);
+    }
+
+    @Override
+    public String toString() { return sb.toString(); }
+
+    private static String escape(String v) {
+        return v.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String format(double v) {
+        if (Double.isNaN(v)) return "NaN";
+        if (Double.isInfinite(v)) return v > 0 ? "+Inf" : "-Inf";
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) return Long.toString((long) v);
+        return BigDecimal.valueOf(v).round(MathContext.DECIMAL64).stripTrailingZeros().toPlainString();
+    }
+}
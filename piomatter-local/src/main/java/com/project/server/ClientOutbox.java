@@ -0,0 +1,255 @@
+package com.project.server;
+
+import org.java_websocket.WebSocket;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Cua de sortida acotada d'un client.
+ *
+ * Els missatges no s'escriuen directament al socket: s'encuen aquí i {@link #pump} els passa
+ * a Java-WebSocket només mentre els bytes pendents d'escriure al socket (en vol) siguin
+ * per sota de {@link Policy#maxInFlightBytes}. Així un panell lent no fa créixer el heap
+ * del servidor i els panells ràpids no l'esperen. Els bytes en vol els compta la cua
+ * mateixa: els passats al socket des de l'últim cop que s'ha vist buit
+ * ({@link WebSocket#hasBufferedData()}), una cota superior del que encara no s'ha escrit.
+ *
+ * Quan la cua és plena s'aplica la política de cada tipus de missatge:
+ * - {@link Overflow#DROP_OLDEST}: es descarta el missatge més antic del mateix tipus o, si no
+ *   n'hi ha, el contingut (text, imatge o frame) més antic. Els missatges de control
+ *   i els ajustos no es reenvien mai i no es descarten: si no hi ha cap contingut per descartar,
+ *   el nou entra igualment (com que se substitueixen per tipus, l'excés és com a molt d'uns
+ *   quants missatges petits) i un client que no els buida acaba desconnectat per
+ *   {@link Policy#maxLagMs}.
+ * - {@link Overflow#LATEST}: el missatge nou substitueix qualsevol pendent del mateix tipus.
+ * Amb {@link Policy#latestDisplay} (per defecte), text i imatge comparteixen una única
+ * plaça d'"estat del panell": com que el client només en mostra un alhora, un text o una
+ * imatge nous substitueixen qualsevol text o imatge encara pendent d'enviar. En una ràfega
+ * d'ordres, l'amplada de banda i la descodificació al client segueixen el ritme al qual el
+ * socket pot lliurar-los i no el ritme de les ordres.
+ * Els frames d'un flux (/stream) no comparteixen aquesta plaça: si la cua s'omple es descarta
+ * el frame més antic, i el buffer de jitter del client s'encarrega de la resta.
+ * De la llista de clients i dels ajustos (brillantor) només importa
+ * l'últim: un de nou substitueix el pendent del mateix tipus. El missatge de benvinguda (la
+ * llista amb l'identificador propi del client) no se substitueix mai: una llista compartida
+ * posterior no porta l'identificador.
+ * Si hi ha missatges pendents i fa més de {@link Policy#maxLagMs} que el socket no n'accepta
+ * cap (des de l'últim enviament, o des que la cua ha deixat de ser buida), el client es
+ * considera massa lent i s'ha de desconnectar. No es mira l'edat del primer pendent: les
+ * substitucions i els descarts la renoven contínuament encara que el socket estigui encallat.
+ *
+ * Tots els mètodes són sincronitzats: s'hi accedeix des de la consola i des del bombeig periòdic.
+ */
+final class ClientOutbox {
+
+    /**
+     * Tipus de missatge (cada un té la seva política de desbordament). Els pings de rellotge no
+     * passen per la cua: s'envien directament perquè l'espera no falsegi la mesura.
+     */
+    enum Kind {
+        WELCOME, CONTROL, SETTING, TEXT, IMAGE, STREAM;
+
+        /** @return true si el missatge substitueix el que mostra el panell */
+        boolean isDisplay() { return this == TEXT || this == IMAGE; }
+
+        /** @return true si és contingut que es pot descartar amb la cua plena (un de més nou el substitueix) */
+        boolean isDroppable() { return isDisplay() || this == STREAM; }
+    }
+
+    /** Què fer amb un missatge nou quan la cua és plena o ja n'hi ha un del mateix tipus. */
+    enum Overflow {
+        DROP_OLDEST, LATEST;
+
+        static Overflow parse(String s, Overflow def) {
+            if (s == null) return def;
+            return switch (s.trim().toLowerCase(Locale.ROOT)) {
+                case "drop-oldest", "drop_oldest" -> DROP_OLDEST;
+                case "latest", "coalesce" -> LATEST;
+                default -> def;
+            };
+        }
+    }
+
+    /**
+     * Límits i polítiques de la cua.
+     *
+     * @param maxQueued        missatges pendents màxims per client
+     * @param text             política per als missatges de text
+     * @param image            política per a les imatges
+     * @param maxInFlightBytes bytes màxims pendents d'escriure al socket
+     * @param maxLagMs         retard màxim abans de desconnectar (0 = mai)
+     * @param latestDisplay    text i imatge comparteixen una sola plaça (el més nou guanya)
+     */
+    record Policy(int maxQueued, Overflow text, Overflow image, long maxInFlightBytes, long maxLagMs,
+                  boolean latestDisplay) {
+
+        static final Policy DEFAULT = new Policy(8, Overflow.DROP_OLDEST, Overflow.LATEST, 256 * 1024, 10_000, true);
+
+        /**
+         * Política per defecte modificable amb propietats del sistema:
+         * {@code matrixplay.outbox.max}, {@code .text}, {@code .image} (drop-oldest|latest),
+         * {@code .inflightKB}, {@code .maxLagMs} i {@code .latestDisplay} (true|false).
+         */
+        static Policy fromSystemProperties() {
+            return new Policy(
+                    Math.max(1, Integer.getInteger("matrixplay.outbox.max", DEFAULT.maxQueued)),
+                    Overflow.parse(System.getProperty("matrixplay.outbox.text"), DEFAULT.text),
+                    Overflow.parse(System.getProperty("matrixplay.outbox.image"), DEFAULT.image),
+                    Math.max(1L, Long.getLong("matrixplay.outbox.inflightKB", DEFAULT.maxInFlightBytes / 1024)) * 1024,
+                    Math.max(0L, Long.getLong("matrixplay.outbox.maxLagMs", DEFAULT.maxLagMs)),
+                    Boolean.parseBoolean(System.getProperty("matrixplay.outbox.latestDisplay",
+                            String.valueOf(DEFAULT.latestDisplay))));
+        }
+
+        Overflow overflowFor(Kind kind) {
+            return switch (kind) {
+                case WELCOME -> Overflow.DROP_OLDEST; // un per connexió, no se substitueix
+                case CONTROL, SETTING -> Overflow.LATEST;
+                case TEXT -> text;
+                case IMAGE -> image;
+                case STREAM -> Overflow.DROP_OLDEST;
+            };
+        }
+    }
+
+    private record Pending(Kind kind, SharedFrame frame, long enqueuedAtNs) {}
+
+    /**
+     * Mètriques d'una cua en un instant.
+     *
+     * @param depth          missatges pendents
+     * @param maxDepth       màxim de missatges pendents vist
+     * @param pendingBytes   bytes pendents a la cua
+     * @param inFlightBytes  bytes passats al socket encara no escrits
+     * @param sent           missatges passats al socket
+     * @param sentBytes      bytes de payload passats al socket
+     * @param dropped        missatges descartats per cua plena
+     * @param coalesced      missatges substituïts per un de més nou
+     * @param lagMs          temps sense poder enviar res amb missatges pendents
+     * @param latencySumNs   suma de les esperes a la cua dels missatges enviats
+     * @param latencyMaxNs   espera màxima a la cua d'un missatge enviat
+     */
+    record Snapshot(int depth, int maxDepth, long pendingBytes, long inFlightBytes, long sent, long sentBytes,
+                    long dropped, long coalesced, long lagMs, long latencySumNs, long latencyMaxNs) {}
+
+    private final Policy policy;
+    private final LongAdder sentBytesTotal;
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private long pendingBytes = 0L;
+    /** Últim progrés: l'últim enviament, o quan la cua ha deixat de ser buida. */
+    private long lastProgressNs = System.nanoTime();
+    /** Bytes passats al socket des de l'últim cop que no tenia res per escriure. */
+    private long handedBytes = 0L;
+
+    // Mètriques
+    private int maxDepth = 0;
+    private long sent = 0L, dropped = 0L, coalesced = 0L;
+    private long sentBytes = 0L, latencySumNs = 0L, latencyMaxNs = 0L;
+
+    /**
+     * @param policy         límits i polítiques
+     * @param sentBytesTotal comptador compartit de bytes enviats per tots els clients
+     */
+    ClientOutbox(Policy policy, LongAdder sentBytesTotal) {
+        this.policy = policy;
+        this.sentBytesTotal = sentBytesTotal;
+    }
+
+    /**
+     * Encua un missatge aplicant la política del seu tipus.
+     *
+     * @param kind  tipus de missatge
+     * @param frame trama compartida a enviar
+     */
+    synchronized void offer(Kind kind, SharedFrame frame) {
+        // El rellotge d'encallament arrenca quan la cua deixa de ser buida, no quan una
+        // substitució la buida un instant
+        if (queue.isEmpty()) lastProgressNs = System.nanoTime();
+        if (policy.latestDisplay() && kind.isDisplay()) {
+            while (removeFirst(Kind::isDisplay)) coalesced++;
+        } else if (policy.overflowFor(kind) == Overflow.LATEST) {
+            while (removeFirst(k -> k == kind)) coalesced++;
+        }
+        if (queue.size() >= policy.maxQueued()
+                && ((kind.isDroppable() && removeFirst(k -> k == kind)) || removeFirst(Kind::isDroppable))) {
+            dropped++;
+        }
+        queue.addLast(new Pending(kind, frame, System.nanoTime()));
+        pendingBytes += frame.payloadBytes();
+        if (queue.size() > maxDepth) maxDepth = queue.size();
+    }
+
+    /**
+     * Passa missatges al socket mentre hi hagi marge de bytes en vol.
+     *
+     * @param conn socket del client
+     * @return false si el client porta més de {@code maxLagMs} sense acceptar res i s'ha de desconnectar
+     * @throws org.java_websocket.exceptions.WebsocketNotConnectedException si el socket ja és tancat
+     */
+    synchronized boolean pump(WebSocket conn) {
+        while (!queue.isEmpty() && inFlightBytes(conn) < policy.maxInFlightBytes()) {
+            Pending p = queue.pollFirst();
+            int bytes = p.frame().payloadBytes();
+            pendingBytes -= bytes;
+            p.frame().sendTo(conn);
+            handedBytes += bytes;
+            sent++;
+            sentBytes += bytes;
+            sentBytesTotal.add(bytes);
+            long now = System.nanoTime();
+            lastProgressNs = now;
+            long waitedNs = now - p.enqueuedAtNs();
+            latencySumNs += waitedNs;
+            if (waitedNs > latencyMaxNs) latencyMaxNs = waitedNs;
+        }
+        return policy.maxLagMs() <= 0 || lagMs() <= policy.maxLagMs();
+    }
+
+    /** @return mil·lisegons sense poder enviar res amb missatges pendents (0 si la cua és buida) */
+    synchronized long lagMs() {
+        return queue.isEmpty() ? 0L : (System.nanoTime() - lastProgressNs) / 1_000_000L;
+    }
+
+    /** @return missatges pendents */
+    synchronized int depth() { return queue.size(); }
+
+    /** @return mètriques actuals (per exportar-les) */
+    synchronized Snapshot snapshot(WebSocket conn) {
+        return new Snapshot(queue.size(), maxDepth, pendingBytes, inFlightBytes(conn), sent, sentBytes,
+                dropped, coalesced, lagMs(), latencySumNs, latencyMaxNs);
+    }
+
+    /** @return resum de mètriques per a la consola */
+    synchronized String stats(WebSocket conn) {
+        return "cua=" + queue.size() + " (max " + maxDepth + ")"
+                + " pendents=" + pendingBytes + "B"
+                + " en_vol=" + inFlightBytes(conn) + "B"
+                + " enviats=" + sent
+                + " descartats=" + dropped
+                + " substituïts=" + coalesced
+                + " retard=" + lagMs() + "ms";
+    }
+
+    /** Bytes que poden estar encara per escriure al socket (0 quan el socket ja ho ha escrit tot). */
+    private long inFlightBytes(WebSocket conn) {
+        if (!conn.hasBufferedData()) handedBytes = 0L;
+        return handedBytes;
+    }
+
+    /** Treu el missatge pendent més antic que compleixi {@code match}. */
+    private boolean removeFirst(Predicate<Kind> match) {
+        for (Iterator<Pending> it = queue.iterator(); it.hasNext(); ) {
+            Pending p = it.next();
+            if (match.test(p.kind())) {
+                it.remove();
+                pendingBytes -= p.frame().payloadBytes();
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,87 @@
+package com.project.server;
+
+import com.project.common.ClientCapabilities;
+
+/**
+ * Perfil d'un client: el que ha anunciat al handshake ({@link ClientCapabilities}) i el que
+ * el servidor n'aprèn pels seus informes ({@link ClientTelemetry}).
+ *
+ * Del flux (/stream), un client lent en rep només un de cada {@link #streamDivisor} frames:
+ * el divisor parteix de l'FPS màxim anunciat i s'ajusta amb els informes. Si un informe
+ * indica sobrecàrrega mentre hi ha un flux actiu, el divisor puja; després de
+ * {@link #RECOVER_REPORTS} informes seguits sense sobrecàrrega, torna a baixar. Així un
+ * panell lent deixa d'endarrerir-se i un de ràpid continua rebent tots els frames.
+ *
+ * Els informes arriben pel fil del socket i el flux llegeix el divisor des del seu fil:
+ * els mètodes són sincronitzats.
+ */
+final class ClientProfile {
+
+    /** Divisor màxim (un de cada tants frames). */
+    static final int MAX_DIVISOR = 8;
+    /** Informes seguits sense sobrecàrrega per tornar a pujar l'FPS del flux. */
+    static final int RECOVER_REPORTS = 5;
+
+    private final ClientCapabilities caps;
+    private int learnedDivisor = 1;
+    private int healthyReports = 0;
+
+    ClientProfile(ClientCapabilities caps) {
+        this.caps = caps;
+    }
+
+    /** @return capacitats anunciades al handshake */
+    ClientCapabilities caps() { return caps; }
+
+    /**
+     * Aprèn d'un informe del client.
+     *
+     * @param report       informe rebut
+     * @param streamActive true si hi ha un flux en curs (només llavors el ritme depèn del servidor)
+     * @return true si el divisor après ha canviat
+     */
+    synchronized boolean learn(ClientTelemetry report, boolean streamActive) {
+        if (!streamActive) {
+            healthyReports = 0;
+            return false;
+        }
+        if (report.overloaded()) {
+            healthyReports = 0;
+            if (learnedDivisor < MAX_DIVISOR) {
+                learnedDivisor++;
+                return true;
+            }
+            return false;
+        }
+        if (++healthyReports >= RECOVER_REPORTS && learnedDivisor > 1) {
+            healthyReports = 0;
+            learnedDivisor--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param streamFps FPS del flux
+     * @return el client rep els frames amb número múltiple d'aquest valor (1 = tots)
+     */
+    synchronized int streamDivisor(int streamFps) {
+        int declared = (caps.maxFps() > 0) ? (streamFps + caps.maxFps() - 1) / caps.maxFps() : 1;
+        return Math.max(1, Math.min(MAX_DIVISOR, Math.max(declared, learnedDivisor)));
+    }
+
+    /**
+     * @param streamFps FPS del flux actiu (0 si no n'hi ha)
+     * @return resum per a la consola
+     */
+    synchronized String describe(int streamFps) {
+        String s = caps.toString();
+        if (streamFps > 0) {
+            int div = streamDivisor(streamFps);
+            s += ", flux " + (div == 1 ? "sencer" : "1/" + div + " (" + (streamFps / div) + " fps)");
+        } else if (learnedDivisor > 1) {
+            s += ", flux 1/" + learnedDivisor + " (après)";
+        }
+        return s;
+    }
+}
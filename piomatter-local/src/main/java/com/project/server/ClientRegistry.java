@@ -6,8 +6,10 @@ import org.json.JSONArray;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Registre de clients connectats amb gestió interna del pool de noms.
@@ -31,6 +33,30 @@ final class ClientRegistry {
     /** Mapa de noms de client a sockets. */
     private final Map<String, WebSocket> byName = new ConcurrentHashMap<>();
 
+    /** Sockets que han anunciat suport de missatges binaris al handshake. */
+    private final Set<WebSocket> binaryCapable = ConcurrentHashMap.newKeySet();
+
+    /** Posició dins del mur de vídeo dels clients que l'han anunciada al handshake. */
+    private final Map<WebSocket, VideoWall.Tile> tiles = new ConcurrentHashMap<>();
+
+    /** Diferència de rellotge estimada de cada client (ping/pong). */
+    private final Map<WebSocket, ClockEstimator> clocks = new ConcurrentHashMap<>();
+
+    /** Capacitats anunciades i ritme après de cada client. */
+    private final Map<WebSocket, ClientProfile> profiles = new ConcurrentHashMap<>();
+
+    /** Últim informe periòdic de cada client que n'envia. */
+    private final Map<WebSocket, ClientTelemetry> telemetry = new ConcurrentHashMap<>();
+
+    /** Cua de sortida acotada de cada client. */
+    private final Map<WebSocket, ClientOutbox> outboxes = new ConcurrentHashMap<>();
+
+    /** Bytes enviats per totes les cues, inclosos els clients que ja s'han desconnectat. */
+    private final LongAdder sentBytes = new LongAdder();
+
+    /** Límits i polítiques de les cues de sortida. */
+    private final ClientOutbox.Policy outboxPolicy;
+
     /** Cua de noms disponibles per assignar. */
     private final Queue<String> pool = new ConcurrentLinkedQueue<>();
 
@@ -40,10 +66,12 @@ final class ClientRegistry {
     /**
      * Crea un nou registre amb el conjunt inicial de noms disponibles.
      *
-     * @param seedNames llista inicial de noms per al pool
+     * @param seedNames    llista inicial de noms per al pool
+     * @param outboxPolicy límits de la cua de sortida de cada client
      */
-    ClientRegistry(List<String> seedNames) {
+    ClientRegistry(List<String> seedNames, ClientOutbox.Policy outboxPolicy) {
         this.seedNames = seedNames;
+        this.outboxPolicy = outboxPolicy;
         resetPool();
     }
 
@@ -89,6 +117,8 @@ final class ClientRegistry {
      */
     String add(WebSocket socket) {
         String name = takeOrRecycle();
+        outboxes.put(socket, new ClientOutbox(outboxPolicy, sentBytes));
+        clocks.put(socket, new ClockEstimator());
         bySocket.put(socket, name);
         byName.put(name, socket);
         return name;
@@ -102,6 +132,12 @@ final class ClientRegistry {
      */
     String remove(WebSocket socket) {
         String name = bySocket.remove(socket);
+        binaryCapable.remove(socket);
+        outboxes.remove(socket);
+        tiles.remove(socket);
+        clocks.remove(socket);
+        telemetry.remove(socket);
+        profiles.remove(socket);
         if (name != null) {
             byName.remove(name);
             giveBack(name);
@@ -129,6 +165,113 @@ final class ClientRegistry {
         return bySocket.get(socket);
     }
 
+    /**
+     * Marca si un client entén el protocol binari ({@code BinaryMessage}).
+     *
+     * @param socket socket del client
+     * @param binary true si el client l'ha anunciat al handshake
+     */
+    void setBinary(WebSocket socket, boolean binary) {
+        if (binary) binaryCapable.add(socket);
+        else binaryCapable.remove(socket);
+    }
+
+    /**
+     * Indica si a un client se li poden enviar missatges binaris.
+     *
+     * @param socket socket del client
+     * @return true si el client entén el protocol binari
+     */
+    boolean supportsBinary(WebSocket socket) {
+        return binaryCapable.contains(socket);
+    }
+
+    /**
+     * Desa la posició d'un client dins del mur de vídeo.
+     *
+     * @param socket socket del client
+     * @param tile   posició anunciada al handshake, o null si no n'ha anunciat cap
+     */
+    void setTile(WebSocket socket, VideoWall.Tile tile) {
+        if (tile != null) tiles.put(socket, tile);
+        else tiles.remove(socket);
+    }
+
+    /**
+     * Obté la posició d'un client dins del mur de vídeo.
+     *
+     * @param socket socket del client
+     * @return la seva posició, o null si no en té
+     */
+    VideoWall.Tile tile(WebSocket socket) {
+        return tiles.get(socket);
+    }
+
+    /**
+     * Obté l'estimació de rellotge d'un client.
+     *
+     * @param socket socket del client
+     * @return la seva estimació, o null si el client ja no és al registre
+     */
+    ClockEstimator clock(WebSocket socket) {
+        return clocks.get(socket);
+    }
+
+    /**
+     * Desa el perfil d'un client (al handshake).
+     *
+     * @param socket  socket del client
+     * @param profile el seu perfil
+     */
+    void setProfile(WebSocket socket, ClientProfile profile) {
+        profiles.put(socket, profile);
+    }
+
+    /**
+     * Obté el perfil d'un client.
+     *
+     * @param socket socket del client
+     * @return el seu perfil, o null si el client ja no és al registre
+     */
+    ClientProfile profile(WebSocket socket) {
+        return profiles.get(socket);
+    }
+
+    /**
+     * Desa l'últim informe d'un client.
+     *
+     * @param socket socket del client
+     * @param report informe rebut
+     */
+    void setTelemetry(WebSocket socket, ClientTelemetry report) {
+        if (bySocket.containsKey(socket)) telemetry.put(socket, report);
+    }
+
+    /**
+     * Obté l'últim informe d'un client.
+     *
+     * @param socket socket del client
+     * @return el seu informe, o null si encara no n'ha enviat cap
+     */
+    ClientTelemetry telemetry(WebSocket socket) {
+        return telemetry.get(socket);
+    }
+
+    /**
+     * Obté la cua de sortida d'un client.
+     *
+     * @param socket socket del client
+     * @return la seva cua, o null si el client ja no és al registre
+     */
+    ClientOutbox outbox(WebSocket socket) {
+        return outboxes.get(socket);
+    }
+
+    /** @return bytes de payload enviats a tots els clients des de l'arrencada */
+    long sentBytesTotal() {
+        return sentBytes.sum();
+    }
+
     /**
      * Retorna la llista actual de noms de clients connectats en format JSONArray.
      *
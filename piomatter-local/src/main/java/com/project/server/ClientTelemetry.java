@@ -0,0 +1,80 @@
+package com.project.server;
+
+import org.json.JSONObject;
+
+import java.util.Locale;
+
+/**
+ * Últim informe periòdic (telemetry) d'un client: com va el seu render loop.
+ *
+ * @param fps          frames per segon reals a la finestra de l'informe
+ * @param cap          FPS objectiu del client
+ * @param p99Ms        p99 del temps de frame a la finestra, en ms
+ * @param dropPct      percentatge de frames que han passat del termini
+ * @param backlog      missatges rebuts pendents de descodificar
+ * @param heapFreeMb   heap lliure, en MB
+ * @param last         últim contingut aplicat al panell (p.ex. {@code image}, {@code stream:move})
+ * @param lastAgeMs    fa quant s'ha aplicat, en el moment de l'informe
+ * @param receivedAtMs recepció de l'informe (rellotge del servidor)
+ */
+record ClientTelemetry(double fps, int cap, double p99Ms, double dropPct, int backlog, long heapFreeMb,
+                       String last, long lastAgeMs, long receivedAtMs) {
+
+    /** Tipus del missatge. */
+    static final String TYPE = "telemetry";
+
+    /** Percentatge de frames fora de termini a partir del qual el client es considera sobrecarregat. */
+    static final double OVERLOAD_DROP_PCT = 5.0;
+
+    /**
+     * @param o            missatge {@value #TYPE}
+     * @param receivedAtMs instant de recepció
+     * @return l'informe
+     */
+    static ClientTelemetry parse(JSONObject o, long receivedAtMs) {
+        return new ClientTelemetry(
+                o.optDouble("fps", 0.0),
+                o.optInt("cap", 0),
+                o.optDouble("p99_ms", 0.0),
+                o.optDouble("drop_pct", 0.0),
+                o.optInt("backlog", 0),
+                o.optLong("heap_free_mb", -1L),
+                o.optString("last", "?"),
+                o.optLong("last_age_ms", -1L),
+                receivedAtMs);
+    }
+
+    /**
+     * Sobrecarregat: perd terminis, el p99 passa d'un frame i mig, o se li acumulen missatges
+     * per descodificar.
+     *
+     * @return true si el panell no dona l'abast
+     */
+    boolean overloaded() {
+        boolean slowFrames = cap > 0 && p99Ms > 1500.0 / cap;
+        return dropPct > OVERLOAD_DROP_PCT || slowFrames || backlog > 1;
+    }
+
+    /**
+     * @param nowMs instant actual
+     * @return una fila de la taula de /stats (sense el nom)
+     */
+    String row(long nowMs) {
+        return String.format(Locale.ROOT, "%6.1f/%-3d %7.1f %6.1f%% %7d %7dMB  %-18s %6s  %s",
+                fps, cap, p99Ms, dropPct, backlog, heapFreeMb, last, ago(lastAgeMs + (nowMs - receivedAtMs)),
+                ago(nowMs - receivedAtMs) + (overloaded() ? "  SOBRECÀRREGA" : ""));
+    }
+
+    /** @return capçalera de la taula de /stats (sense la columna del nom) */
+    static String header() {
+        return String.format(Locale.ROOT, "%10s %7s %7s %7s %9s  %-18s %6s  %s",
+                "fps/cap", "p99 ms", "perduts", "cua dec", "heap", "últim contingut", "fa", "informe");
+    }
+
+    private static String ago(long ms) {
+        if (ms < 0) return "?";
+        if (ms < 10_000) return String.format(Locale.ROOT, "%.1fs", ms / 1e3);
+        if (ms < 120_000) return (ms / 1000) + "s";
+        return (ms / 60_000) + "min";
+    }
+}
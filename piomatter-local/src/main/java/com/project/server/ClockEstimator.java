@@ -0,0 +1,57 @@
+package com.project.server;
+
+/**
+ * Estimació de la diferència entre el rellotge d'un client i el del servidor (ping/pong).
+ *
+ * El servidor envia un ping amb el seu instant {@code t0}; el client respon amb el mateix
+ * {@code t0} i el seu instant {@code t1}; el servidor el rep a {@code t2}. Suposant el camí
+ * simètric, {@code diferència = t1 - (t0 + t2) / 2} amb un error màxim de {@code rtt / 2}.
+ *
+ * Les mostres amb més retard (cues, reintents) són les menys fiables: de les últimes
+ * {@link #WINDOW} es queda la de menys rtt.
+ */
+final class ClockEstimator {
+
+    /** Mostres recents entre les quals es tria la millor. */
+    static final int WINDOW = 8;
+
+    private final long[] offsets = new long[WINDOW];
+    private final long[] rtts = new long[WINDOW];
+    private int count = 0, next = 0;
+    private int best = -1;
+
+    /**
+     * Afegeix una mostra.
+     *
+     * @param t0 enviament del ping (rellotge del servidor)
+     * @param t1 resposta del client (rellotge del client)
+     * @param t2 recepció del pong (rellotge del servidor)
+     */
+    synchronized void sample(long t0, long t1, long t2) {
+        long rtt = t2 - t0;
+        if (rtt < 0) return; // pong d'un ping que no és nostre
+        offsets[next] = t1 - (t0 + t2) / 2;
+        rtts[next] = rtt;
+        next = (next + 1) % WINDOW;
+        count = Math.min(WINDOW, count + 1);
+        best = 0;
+        for (int i = 1; i < count; i++) {
+            if (rtts[i] < rtts[best]) best = i;
+        }
+    }
+
+    /** @return true si ja hi ha alguna mostra */
+    synchronized boolean isKnown() { return best >= 0; }
+
+    /** @return rellotge del client - rellotge del servidor, en ms (0 si encara no se sap) */
+    synchronized long offsetMs() { return best < 0 ? 0L : offsets[best]; }
+
+    /** @return rtt de la mostra triada, en ms (-1 si encara no se sap) */
+    synchronized long rttMs() { return best < 0 ? -1L : rtts[best]; }
+
+    @Override
+    public synchronized String toString() {
+        return best < 0 ? "rellotge=?" : "rellotge=" + (offsets[best] >= 0 ? "+" : "") + offsets[best]
+                + "ms (rtt " + rtts[best] + "ms)";
+    }
+}
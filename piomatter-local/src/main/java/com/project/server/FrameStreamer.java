@@ -0,0 +1,266 @@
+package com.project.server;
+
+import com.piomatter.UtilsAnimation;
+import com.project.common.BinaryMessage;
+import com.project.common.FrameDelta;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Flux continu de frames cap als panells (/stream).
+ *
+ * La font (un directori d'imatges, ordenades pel nom, o un fitxer d'imatge o d'animació)
+ * es pre-renderitza un sol cop a RGB888 amb la geometria del panell. Després un fil propi
+ * emet un frame a cada període, en bucle, amb el número de frame i l'instant de presentació
+ * segons el rellotge del servidor: els clients el reprodueixen sincronitzat a aquest rellotge
+ * a través d'un buffer de jitter.
+ *
+ * Entre keyframes (un cada {@link #KEYFRAME_INTERVAL} frames) només s'envien els trams que
+ * canvien respecte al frame anterior ({@link FrameDelta}), calculats un sol cop en carregar la
+ * font. Un client que perd un frame (o que s'afegeix a mig flux) espera el keyframe següent.
+ *
+ * Amb un mur de vídeo ({@link VideoWall}) la font s'ajusta al llenç sencer i es retalla en
+ * un flux per tile, cadascun amb els seus trams. Tots comparteixen el número de frame i
+ * l'instant de presentació, de manera que els clients del mur el mostren alhora.
+ *
+ * El període es calcula des de l'inici del flux (sense deriva acumulada). Cada frame
+ * s'emmarca una sola vegada per a tots els clients del mateix tile ({@link SharedFrame}).
+ *
+ * Els clients que no donen l'abast poden rebre només un de cada N frames
+ * ({@link Tick#decimated}): com que els trams són respecte al frame immediatament anterior,
+ * aquests frames s'envien sempre sencers, amb un temps de vida que cobreix N períodes. Porten
+ * l'interval nominal del flux (no N períodes): el retard del buffer de jitter en depèn i ha de
+ * ser el mateix a tots els clients perquè els tiles d'un mur canviïn alhora.
+ */
+final class FrameStreamer {
+
+    /** Memòria màxima dels frames pre-renderitzats. */
+    static final long MAX_BYTES = 64L * 1024 * 1024;
+    /** Temps que els clients mantenen l'últim frame si el flux s'atura. */
+    static final int HOLD_MS = 1000;
+    /** Frames entre keyframes ({@code -Dmatrixplay.stream.keyframe}, 1 = sense trams). */
+    static final int KEYFRAME_INTERVAL = Math.max(1, Integer.getInteger("matrixplay.stream.keyframe", 30));
+
+    private static final Set<String> STILL_EXTS = Set.of("png", "jpg", "jpeg", "gif", "apng");
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "stream");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Un frame del flux, a punt per enviar als clients binaris. Només és vàlid dins del sink
+     * (fil del flux).
+     */
+    static final class Tick {
+        private final VideoWall wall;
+        private final PanelGeometry g;
+        private final int fps, seq;
+        private final SharedFrame[] frames;
+        private final byte[][] full;
+        private final Encoder encoder;
+        private SharedFrame[][] decimated; // [divisor][tile], només si algun client en necessita
+
+        private Tick(VideoWall wall, PanelGeometry g, int fps, int seq, SharedFrame[] frames, byte[][] full,
+                     Encoder encoder) {
+            this.wall = wall;
+            this.g = g;
+            this.fps = fps;
+            this.seq = seq;
+            this.frames = frames;
+            this.full = full;
+            this.encoder = encoder;
+        }
+
+        /** @return mur de vídeo del flux */
+        VideoWall wall() { return wall; }
+
+        /** @return geometria dels frames (d'un tile) */
+        PanelGeometry geometry() { return g; }
+
+        /** @return FPS del flux */
+        int fps() { return fps; }
+
+        /**
+         * @param tile índex del tile
+         * @return el frame (trams o keyframe) per als clients que reben tots els frames
+         */
+        SharedFrame frame(int tile) { return frames[tile]; }
+
+        /**
+         * @param tile    índex del tile
+         * @param divisor el client rep un de cada {@code divisor} frames
+         * @return el frame sencer, o null si aquest no li toca
+         */
+        SharedFrame decimated(int tile, int divisor) {
+            if (divisor <= 1) return frames[tile];
+            if (seq % divisor != 0) return null;
+            if (decimated == null) decimated = new SharedFrame[ClientProfile.MAX_DIVISOR + 1][];
+            int d = Math.min(divisor, ClientProfile.MAX_DIVISOR);
+            if (decimated[d] == null) decimated[d] = new SharedFrame[frames.length];
+            if (decimated[d][tile] == null) decimated[d][tile] = encoder.encode(d, full[tile]);
+            return decimated[d][tile];
+        }
+    }
+
+    /** Emmarca un keyframe del tick actual per als clients que en reben un de cada {@code divisor}. */
+    private interface Encoder {
+        SharedFrame encode(int divisor, byte[] pixels);
+    }
+
+    private final Consumer<Tick> sink;
+    private ScheduledFuture<?> task;
+    private String description = null;
+    private int nextStreamId = 1;
+    private int fps = 0;
+
+    /** @param sink rep cada frame del flux (un per tile del mur) */
+    FrameStreamer(Consumer<Tick> sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Pre-renderitza la font i comença a emetre (atura el flux anterior si n'hi havia).
+     *
+     * @param spec directori o fitxer
+     * @param fps  frames per segon
+     * @param g    geometria del panell (d'un tile, si hi ha mur)
+     * @param wall mur de vídeo: la font s'ajusta al llenç sencer i cada tile en rep el seu tros
+     * @return nombre de frames del flux
+     * @throws IOException si no es pot llegir la font o no conté cap frame
+     */
+    synchronized int start(String spec, int fps, PanelGeometry g, VideoWall wall) throws IOException {
+        List<byte[]> canvas = load(new File(spec), wall.canvas(g));
+        if (canvas.isEmpty()) throw new IOException("cap frame a " + spec);
+        final int count = canvas.size();
+        final int tiles = wall.tiles();
+
+        // Frames de cada tile i els seus trams respecte a l'anterior (en bucle, el primer ve de l'últim)
+        final byte[][][] frames = new byte[tiles][count][];
+        final byte[][][] deltas = new byte[tiles][count][];
+        for (int i = 0; i < count; i++) {
+            byte[] c = canvas.set(i, null); // el llenç es pot alliberar a mesura que es retalla
+            for (int t = 0; t < tiles; t++) frames[t][i] = (tiles == 1) ? c : wall.slice(c, g, t);
+        }
+        long deltaBytes = 0L;
+        for (int t = 0; t < tiles; t++) {
+            for (int i = 0; i < count; i++) {
+                byte[] d = FrameDelta.encode(frames[t][Math.floorMod(i - 1, count)], frames[t][i]);
+                deltas[t][i] = (d.length < g.frameBytes()) ? d : null; // si no surt a compte, frame sencer
+                deltaBytes += (deltas[t][i] != null) ? d.length : g.frameBytes();
+            }
+        }
+
+        stop();
+        final String name = new File(spec).getName();
+        final int streamId = nextStreamId++;
+        final long periodUs = 1_000_000L / Math.max(1, fps);
+        final long startMs = System.currentTimeMillis();
+        final int[] seq = {0};
+
+        task = timer.scheduleAtFixedRate(() -> {
+            // Una excepció aturaria el flux en silenci (scheduleAtFixedRate no torna a executar)
+            try {
+                int n = seq[0]++;
+                long ptsMs = startMs + n * periodUs / 1000L;
+                int i = n % count;
+                // Tots els tiles porten el mateix número i instant: els clients els mostren alhora
+                SharedFrame[] out = new SharedFrame[tiles];
+                byte[][] full = new byte[tiles][];
+                for (int t = 0; t < tiles; t++) {
+                    boolean key = (n % KEYFRAME_INTERVAL == 0) || deltas[t][i] == null;
+                    full[t] = frames[t][i];
+                    out[t] = SharedFrame.binary(BinaryMessage.encodeStream(HOLD_MS, name, g.width(), g.height(),
+                            streamId, n, ptsMs, (int) periodUs, !key, key ? frames[t][i] : deltas[t][i]));
+                }
+                // Amb menys frames, l'últim s'ha de mantenir com a mínim dos intervals reals; l'interval
+                // del missatge és el nominal perquè el retard de jitter sigui igual a tots els clients
+                Encoder decimated = (div, px) -> SharedFrame.binary(BinaryMessage.encodeStream(
+                        (int) Math.max(HOLD_MS, 2 * div * periodUs / 1000L), name, g.width(), g.height(),
+                        streamId, n, ptsMs, (int) periodUs, false, px));
+                sink.accept(new Tick(wall, g, fps, n, out, full, decimated));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, 0L, periodUs, TimeUnit.MICROSECONDS);
+        this.fps = fps;
+
+        description = name + " (" + count + " frames a " + fps + " fps, " + g
+                + (tiles > 1 ? ", mur " + wall + " = " + wall.canvas(g).width() + "x" + wall.canvas(g).height() : "")
+                + String.format(Locale.ROOT, ", trams = %.1f%% dels frames",
+                        100.0 * deltaBytes / ((long) tiles * count * g.frameBytes()))
+                + ", keyframe cada " + KEYFRAME_INTERVAL + ")";
+        return count;
+    }
+
+    /** Atura el flux actual (si n'hi ha). */
+    synchronized void stop() {
+        if (task != null) task.cancel(false);
+        task = null;
+        description = null;
+        fps = 0;
+    }
+
+    /** @return descripció del flux actiu, o null */
+    synchronized String current() { return description; }
+
+    /** @return FPS del flux actiu, o 0 si no n'hi ha */
+    synchronized int fps() { return fps; }
+
+    /** Atura el flux i el fil d'emissió. */
+    void shutdown() {
+        stop();
+        timer.shutdownNow();
+    }
+
+    /** Frames RGB888 d'un directori (cada imatge, per ordre de nom) o d'un fitxer. */
+    private static List<byte[]> load(File src, PanelGeometry g) throws IOException {
+        final int maxFrames = (int) Math.max(1, MAX_BYTES / g.frameBytes());
+        List<byte[]> frames = new ArrayList<>();
+        if (src.isDirectory()) {
+            File[] files = src.listFiles(f -> f.isFile() && STILL_EXTS.contains(ext(f.getName())));
+            if (files == null) throw new IOException("no es pot llegir " + src);
+            Arrays.sort(files);
+            for (File f : files) {
+                if (frames.size() >= maxFrames) break;
+                addFrames(f, g, maxFrames, frames);
+            }
+        } else if (src.isFile()) {
+            addFrames(src, g, maxFrames, frames);
+        } else {
+            throw new IOException("no existeix: " + src);
+        }
+        return frames;
+    }
+
+    /** Afegeix tots els frames d'una animació, o la imatge si és estàtica. */
+    private static void addFrames(File f, PanelGeometry g, int maxFrames, List<byte[]> out) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(f.toPath()));
+        int n = UtilsAnimation.decode(data, maxFrames - out.size(), (canvas, delayMs) -> out.add(g.renderRGB888(canvas)));
+        if (n >= 0) return;
+        BufferedImage img = ImageIO.read(f);
+        if (img != null) out.add(g.renderRGB888(img));
+    }
+
+    private static String ext(String name) {
+        int dot = name.lastIndexOf('.');
+        return (dot < 0) ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
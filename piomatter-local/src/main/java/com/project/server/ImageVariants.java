@@ -0,0 +1,142 @@
+package com.project.server;
+
+import com.piomatter.UtilsAnimation;
+import com.piomatter.UtilsImage;
+import com.piomatter.UtilsImage.FitMode;
+import com.project.common.BinaryMessage;
+import com.project.common.ClientCapabilities;
+import com.project.common.ClientCapabilities.Encoding;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Versions d'una imatge per als clients binaris, cadascuna adaptada al perfil del client.
+ *
+ * - {@link Encoding#RAW} (o /prerender amb {@link Encoding#AUTO}): frame RGB888 ajustat a la
+ *   mida del panell del client (o a la de /panel si no l'ha anunciada).
+ * - La resta: el fitxer; si el client ha anunciat el panell i la imatge és més gran, reduïda
+ *   (PNG) a la mida mínima que encara cobreix el panell, de manera que qualsevol ajust al
+ *   client surt igual però viatgen i es descodifiquen menys bytes.
+ * Les animacions (GIF/APNG) s'envien sempre tal qual.
+ *
+ * Cada versió es calcula i s'emmarca com a molt un cop per difusió (la imatge font es
+ * descodifica també un sol cop) i la comparteixen tots els clients que la necessiten.
+ * Només s'usa des del fil que fa la difusió.
+ */
+final class ImageVariants {
+
+    private final String name;
+    private final byte[] data;
+    private final int ttlMs;
+    private final boolean prerender;
+    private final PanelGeometry panel;
+    private final boolean animated;
+
+    private final Map<String, SharedFrame> cache = new HashMap<>();
+    private BufferedImage decoded;
+    private boolean decodeFailed;
+
+    /**
+     * @param name      nom de la imatge
+     * @param data      bytes del fitxer
+     * @param ttlMs     temps de vida al panell
+     * @param prerender /prerender activat (per als clients {@link Encoding#AUTO})
+     * @param panel     geometria de /panel (ajust, brillantor i mida per defecte)
+     */
+    ImageVariants(String name, byte[] data, int ttlMs, boolean prerender, PanelGeometry panel) {
+        this.name = name;
+        this.data = data;
+        this.ttlMs = ttlMs;
+        this.prerender = prerender;
+        this.panel = panel;
+        this.animated = UtilsAnimation.isAnimated(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * @param profile perfil del client (null = sense capacitats anunciades)
+     * @return la trama que li toca
+     */
+    SharedFrame forClient(ClientProfile profile) {
+        ClientCapabilities caps = (profile == null) ? ClientCapabilities.UNKNOWN : profile.caps();
+        if (animated) return original();
+
+        PanelGeometry g = caps.hasPanel()
+                ? new PanelGeometry(caps.panelWidth(), caps.panelHeight(), panel.fit(), panel.brightness())
+                : panel;
+        boolean raw = caps.encoding() == Encoding.RAW || (caps.encoding() == Encoding.AUTO && prerender);
+        if (raw) {
+            SharedFrame f = cached("raw " + g.width() + "x" + g.height(), () -> rawFrame(g));
+            if (f != null) return f;
+        } else if (caps.hasPanel()) {
+            SharedFrame f = cached("file " + g.width() + "x" + g.height(), () -> downscaledFile(g));
+            if (f != null) return f;
+        }
+        return original();
+    }
+
+    /** @return el fitxer tal qual */
+    private SharedFrame original() {
+        return cached("original", () -> SharedFrame.binary(BinaryMessage.encode(BinaryMessage.T_IMAGE, ttlMs, name, data)));
+    }
+
+    /** @return el frame RGB888 per a {@code g}, o null si la imatge no es pot descodificar */
+    private SharedFrame rawFrame(PanelGeometry g) {
+        BufferedImage src = decoded();
+        if (src == null) {
+            System.out.println("Pre-render: no s'ha pogut descodificar " + name + ", s'envia el fitxer");
+            return null;
+        }
+        return SharedFrame.binary(BinaryMessage.encodeRaw(ttlMs, name, g.width(), g.height(), g.renderRGB888(src)));
+    }
+
+    /**
+     * @return el fitxer reduït a la mida mínima que cobreix el panell, o null si la imatge ja
+     *         no és més gran o reduir-la no estalvia bytes
+     */
+    private SharedFrame downscaledFile(PanelGeometry g) {
+        BufferedImage src = decoded();
+        if (src == null) return null;
+        double scale = Math.max((double) g.width() / src.getWidth(), (double) g.height() / src.getHeight());
+        if (scale >= 1.0) return null;
+        int w = Math.max(1, (int) Math.ceil(src.getWidth() * scale));
+        int h = Math.max(1, (int) Math.ceil(src.getHeight() * scale));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!ImageIO.write(UtilsImage.fitToSize(src, w, h, FitMode.STRETCH), "png", out)) return null;
+            if (out.size() >= data.length) return null;
+            return SharedFrame.binary(BinaryMessage.encode(BinaryMessage.T_IMAGE, ttlMs, name, out.toByteArray()));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Imatge font, descodificada com a molt un cop. */
+    private BufferedImage decoded() {
+        if (decoded == null && !decodeFailed) {
+            try {
+                decoded = ImageIO.read(new ByteArrayInputStream(data));
+            } catch (IOException e) {
+                decoded = null;
+            }
+            decodeFailed = decoded == null;
+        }
+        return decoded;
+    }
+
+    /** Versió en memòria (també els intents fallits, per no repetir-los a cada client). */
+    private SharedFrame cached(String key, Supplier<SharedFrame> build) {
+        if (cache.containsKey(key)) return cache.get(key);
+        SharedFrame f = build.get();
+        cache.put(key, f);
+        return f;
+    }
+}
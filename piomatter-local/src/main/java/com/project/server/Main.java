@@ -4,6 +4,12 @@ import org.java_websocket.server.WebSocketServer;
 import org.java_websocket.WebSocket;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.CloseFrame;
+
+import com.project.common.BinaryMessage;
+import com.project.common.ClientCapabilities;
+import com.project.common.MetricsEndpoint;
+import com.project.common.PromText;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -18,11 +24,16 @@ import org.jline.terminal.Terminal;
 import org.jline.terminal.TerminalBuilder;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToDoubleFunction;
 
 import java.util.Base64;
 
@@ -30,12 +41,19 @@ import java.util.Base64;
  * Servidor WebSocket: només broadcast.
  * Ordes per consola (amb historial i edició de línia):
  *   /help
- *   /text <missatge>
+ *   /text [--marquee] [--speed=px/s] [--dir=left|right] [--loops=N] [--blend=on|off] [--ttl=ms] <missatge>
  *   /image <spec>   on <spec> és:
- *       - un path de fitxer (PNG/JPG/GIF...) → s'encoda a Base64
+ *       - un path de fitxer (PNG/JPG/GIF/APNG) → s'encoda a Base64
  *       - un path .b64 → es llegeix la cadena Base64
  *       - "classpath:<res>" → es carrega des de src/main/resources (p.ex. classpath:ietilogo.png)
+ *   /prerender [on|off]
+ *   /stream <fitxer-o-directori> [fps] | /stream stop
+ *   /wall [<columnes>x<files>|off]
+ *   /panel <amplada>x<alçada> [fit] [brillantor]
+ *   /brightness <0..255>
  *   /list
+ *   /queues
+ *   /stats
  *   /quit
  *
  * Tipus de missatges cap al client:
@@ -47,11 +65,81 @@ import java.util.Base64;
  * }
  *
  * {
+ *  "type": "marquee",
+ *  "message": "Hola món!",
+ *  "ttl_ms": 5000,
+ *  "speed_px_s": 30,
+ *  "direction": "left",
+ *  "loops": 1,
+ *  "blend": true
+ * }
+ * (loops = 0: es desplaça fins al TTL; loops > 0: dura just aquestes voltes, sigui quin sigui el TTL)
+ *
+ * {
+ *  "type": "brightness",
+ *  "value": 180
+ * }
+ * (el client la passa al backend, que l'aplica per taula a cada swap: no canvia cap còpia)
+ *
+ * {
  *  "type": "image",
  *  "name": "ietilogo.png",
  *  "b64": "<cadena Base64 molt llarga>",
  *  "ttl_ms": 5000
  * }
+ *
+ * Als clients que envien la capçalera {@code X-MatrixPlay-Binary: 1} al handshake,
+ * les imatges s'envien com a missatge binari ({@link BinaryMessage}): capçalera compacta
+ * + bytes del fitxer, sense Base64 ni JSON. La resta de clients reben el JSON anterior.
+ * Amb /prerender on, el servidor descodifica i ajusta la imatge un sol cop i els clients
+ * binaris reben directament el frame RGB888 del panell configurat amb /panel.
+ * Les animacions (GIF/APNG) s'envien sempre com a fitxer: cada client en descodifica els
+ * frames un sol cop i els reprodueix.
+ * Amb /stream, els clients binaris reben un flux continu de frames {@link BinaryMessage#T_STREAM_FRAME}
+ * pre-renderitzats amb la geometria de /panel, cadascun amb l'instant en què s'ha de mostrar.
+ *
+ * Mur de vídeo (/wall): cada client anuncia la seva posició al handshake amb la capçalera
+ * {@code X-MatrixPlay-Tile: <columna>,<fila>}. El flux es renderitza al llenç sencer
+ * (columnes x files panells) i cada client en rep només el seu tros, amb el mateix número de
+ * frame i instant de presentació que la resta.
+ *
+ * Rellotge: el servidor envia periòdicament a cada client
+ *
+ * {
+ *  "type": "ping",
+ *  "t0": 1700000000000,
+ *  "offset_ms": 12,
+ *  "rtt_ms": 3
+ * }
+ *
+ * i el client respon de seguida amb {"type": "pong", "t0": <el mateix>, "t1": <el seu rellotge>}.
+ * offset_ms (rellotge del client - rellotge del servidor, segons els pongs anteriors) permet
+ * al client convertir els instants de presentació al seu rellotge; falta si encara no se sap.
+ *
+ * Informe periòdic de cada client (cada 2 s per defecte, -Dmatrixplay.telemetry.ms al client):
+ *
+ * {
+ *  "type": "telemetry",
+ *  "fps": 59.8,
+ *  "cap": 60,
+ *  "p99_ms": 17.2,
+ *  "drop_pct": 0.0,
+ *  "backlog": 0,
+ *  "heap_free_mb": 212,
+ *  "last": "stream:move",
+ *  "last_age_ms": 5300
+ * }
+ * (fps, p99 i frames perduts de la finestra des de l'informe anterior; /stats en mostra la taula)
+ *
+ * Perfil de cada client: al handshake pot anunciar la mida del seu panell, el seu FPS màxim i
+ * el format d'imatge que prefereix ({@link ClientCapabilities}). Les imatges se li adapten
+ * (pre-render a la mida del seu panell, o el fitxer reduït), del flux en rep només els frames
+ * que pot mostrar, i si els seus informes indiquen sobrecàrrega, cada cop menys (i més quan es
+ * recupera). /stats mostra el perfil de cada client.
+ *
+ * Mètriques: amb {@code -Dmatrixplay.metrics.port=<port>}, {@code http://<host>:<port>/metrics}
+ * exposa en format Prometheus els clients connectats, els bytes enviats i, per client, la
+ * profunditat de la cua, l'espera dels missatges a la cua i el rellotge.
  */
 
 public class Main extends WebSocketServer {
@@ -66,14 +154,27 @@ public class Main extends WebSocketServer {
     private static final String K_TTL = "ttl_ms";
     private static final String K_NAME = "name";
     private static final String K_B64  = "b64";
+    private static final String K_SPEED = "speed_px_s";
+    private static final String K_DIR   = "direction";
+    private static final String K_LOOPS = "loops";
+    private static final String K_BLEND = "blend";
+    private static final String K_T0 = "t0";
+    private static final String K_T1 = "t1";
+    private static final String K_OFFSET = "offset_ms";
+    private static final String K_RTT = "rtt_ms";
+    private static final String K_VALUE = "value";
 
     // message types
     private static final String T_CLIENTS = "clients";
     private static final String T_TEXT  = "text";
+    private static final String T_MARQUEE = "marquee";
     private static final String T_IMAGE = "image";
+    private static final String T_PING = "ping";
+    private static final String T_PONG = "pong";
+    private static final String T_BRIGHTNESS = "brightness";
 
     // Extensions permeses
-    private static final Set<String> ALLOWED_EXTS = Set.of("png", "jpg", "jpeg");
+    private static final Set<String> ALLOWED_EXTS = Set.of("png", "apng", "jpg", "jpeg", "gif");
 
     // Ajuda
     private static final String HELP_TEXT = """
@@ -82,52 +183,233 @@ public class Main extends WebSocketServer {
             /text <missatge>
                   → Envia un missatge de text als clients.
                   Exemple: /text Hola a tothom!
+                  Opcions (abans del missatge) per fer-lo desplaçar com un rètol:
+                     --marquee          activa el rètol (implícit amb qualsevol altra opció de rètol)
+                     --speed=<px/s>     velocitat (per defecte 30)
+                     --dir=left|right   direcció (per defecte left)
+                     --loops=<N>        voltes; 0 = fins que caduqui (per defecte 1: una passada sencera)
+                     --blend=on|off     desplaçament sub-píxel (per defecte on)
+                  Opció també per al text fix:
+                     --ttl=<ms>         temps en pantalla (per defecte 5000; amb rètol, només si --loops=0)
+                     • /text --speed=45 --loops=2 Benvinguts a MatrixPlay!
             /image <spec>
-                  → Envia una imatge PNG/JPG/JPEG (no s'accepta .b64).
+                  → Envia una imatge PNG/JPG/JPEG, o una animació GIF/APNG (no s'accepta .b64).
                      • /image classpath:ietilogo.png
                      • /image ./src/main/resources/ietilogo.png
+            /prerender [on|off]
+                  → Amb 'on', /image es descodifica i s'ajusta al panell al servidor
+                     i els clients binaris reben el frame RGB888 llest per copiar.
+            /stream <fitxer-o-directori> [fps]
+                  → Emet un flux continu de frames (per defecte 30 fps, en bucle) als
+                     clients binaris: les imatges d'un directori per ordre de nom, o els
+                     frames d'un GIF/APNG. Es pre-renderitza amb la geometria de /panel.
+                     • /stream ./frames 25
+                     • /stream stop   → atura el flux
+            /wall [<columnes>x<files>|off]
+                  → Mur de vídeo: /stream es reparteix entre els clients segons la
+                     posició que anuncien (-Dmatrixplay.tile=<columna>,<fila>), amb un
+                     tile de la mida de /panel. Sense arguments, mostra els tiles i rellotges.
+                     • /wall 2x1
+                     • /wall off
+            /panel <amplada>x<alçada> [fit] [brillantor]
+                  → Geometria del pre-render (per defecte: 64x64 contain 255). La brillantor
+                     s'aplica als píxels pre-renderitzats; per a la del panell, /brightness.
+                     • /panel 128x64 cover
+            /brightness <0..255>
+                  → Brillantor dels panells de tots els clients (s'aplica al backend).
+                     • /brightness 120
             /list → Mostra la llista d'identificadors de clients connectats.
+            /queues → Mostra l'estat de la cua de sortida de cada client.
+            /stats → Taula de rendiment dels panells segons els seus informes (fps, p99,
+                     frames perduts, cua de descodificació, heap, últim contingut).
             /quit → Atura el servidor.
             ────────────────────────────────────────────────────────────────────
             """;
 
+    // Temps de vida dels missatges enviats des de la consola
+    private static final int TTL_MS = 5000;
+
+    // Frames per segon per defecte de /stream
+    private static final int STREAM_FPS = 30;
+
+    // Període del bombeig de les cues de sortida
+    private static final long PUMP_PERIOD_MS = 20;
+
+    // Període dels pings de rellotge
+    private static final long CLOCK_PING_MS = 1000;
+
     private final ClientRegistry clients;
     private final CountDownLatch quitLatch;
+    private final ScheduledExecutorService pumper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "outbox-pump");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Pre-render al servidor (/prerender, /panel)
+    private volatile boolean prerender = false;
+    private volatile PanelGeometry panel = PanelGeometry.DEFAULT;
+
+    // Mur de vídeo (/wall): s'aplica al /stream següent
+    private volatile VideoWall wall = VideoWall.SINGLE;
+
+    // Endpoint de mètriques (-Dmatrixplay.metrics.port), o null
+    private volatile MetricsEndpoint metrics;
+
+    // Flux continu de frames (/stream)
+    private final FrameStreamer streamer = new FrameStreamer(this::broadcastStreamFrame);
 
     public Main(InetSocketAddress address, CountDownLatch quitLatch) {
         super(address);
-        this.clients = new ClientRegistry(CHARACTER_NAMES);
+        this.clients = new ClientRegistry(CHARACTER_NAMES, ClientOutbox.Policy.fromSystemProperties());
         this.quitLatch = quitLatch;
     }
 
     // Helpers
     private static JSONObject msg(String type) { return new JSONObject().put(K_TYPE, type); }
 
-    private void sendSafe(WebSocket to, String payload) {
+    /** Encua una trama compartida a la cua de sortida d'un client i la bomba. */
+    private void sendSafe(WebSocket to, ClientOutbox.Kind kind, SharedFrame frame) {
         if (to == null) return;
+        ClientOutbox outbox = clients.outbox(to);
+        if (outbox == null) return;
+        outbox.offer(kind, frame);
+        pump(to, outbox);
+    }
+
+    /**
+     * Passa al socket el que permeti la cua de sortida; si el client és massa lent el desconnecta.
+     * Si el socket ja no hi és, el treu del registre.
+     */
+    private void pump(WebSocket conn, ClientOutbox outbox) {
         try {
-            to.send(payload);
+            if (!outbox.pump(conn)) {
+                System.out.println("Client massa lent, es desconnecta: " + clients.nameBySocket(conn)
+                        + " (" + outbox.lagMs() + " ms endarrerit)");
+                conn.closeConnection(CloseFrame.TRY_AGAIN_LATER, "Client massa lent");
+            }
         } catch (WebsocketNotConnectedException e) {
-            String name = clients.cleanupDisconnected(to);
+            String name = clients.cleanupDisconnected(conn);
             System.out.println("Client desconnectat durant send: " + name);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /** Bombeig periòdic: les cues avancen a mesura que els sockets alliberen bytes. */
+    private void pumpAll() {
+        for (WebSocket conn : clients.snapshot().keySet()) {
+            ClientOutbox outbox = clients.outbox(conn);
+            if (outbox != null && outbox.depth() > 0) pump(conn, outbox);
+        }
+    }
+
+    /** Serialitza i emmarca el missatge una sola vegada i el reutilitza per a tots els clients. */
     private void broadcastAll(String payload) {
-        for (Map.Entry<WebSocket, String> e : clients.snapshot().entrySet()) {
-            sendSafe(e.getKey(), payload);
+        SharedFrame frame = SharedFrame.text(payload);
+        for (WebSocket conn : clients.snapshot().keySet()) {
+            sendSafe(conn, ClientOutbox.Kind.TEXT, frame);
+        }
+    }
+
+    /**
+     * Frame de /stream: només per als clients binaris (la resta no el poden mostrar). Amb mur,
+     * cada client rep el tros del seu tile, i els que no en tenen cap dins del mur no reben res.
+     * Segons el seu perfil, un client rep només un de cada N frames, i un client amb un panell
+     * d'una altra mida no en rep cap (no el podria mostrar). En un mur tots els tiles han de
+     * canviar de frame alhora: el divisor és el del client més lent del mur per a tots.
+     */
+    private void broadcastStreamFrame(FrameStreamer.Tick tick) {
+        Set<WebSocket> conns = clients.snapshot().keySet();
+        int wallDivisor = 0;
+        if (tick.wall().tiles() > 1) {
+            for (WebSocket conn : conns) wallDivisor = Math.max(wallDivisor, streamDivisor(conn, tick));
+        }
+        for (WebSocket conn : conns) {
+            int div = streamDivisor(conn, tick);
+            if (div == 0) continue;
+            SharedFrame frame = tick.decimated(tick.wall().indexOf(clients.tile(conn)), Math.max(div, wallDivisor));
+            if (frame != null) sendSafe(conn, ClientOutbox.Kind.STREAM, frame);
         }
     }
 
-    private void sendClientsListToAll() {
+    /** @return un de cada quants frames del flux rep el client (1 = tots), o 0 si no en rep cap */
+    private int streamDivisor(WebSocket conn, FrameStreamer.Tick tick) {
+        if (!clients.supportsBinary(conn) || tick.wall().indexOf(clients.tile(conn)) < 0) return 0;
+        ClientProfile profile = clients.profile(conn);
+        if (profile == null) return 1;
+        ClientCapabilities caps = profile.caps();
+        PanelGeometry g = tick.geometry();
+        if (caps.hasPanel() && (caps.panelWidth() != g.width() || caps.panelHeight() != g.height())) return 0;
+        return profile.streamDivisor(tick.fps());
+    }
+
+    /**
+     * Ping de rellotge a cada client, amb la diferència estimada fins ara. No passa per la cua
+     * de sortida: l'espera darrere dels frames i imatges pendents només s'afegiria al trajecte
+     * d'anada i esbiaixaria la diferència (que suposa els dos trajectes iguals). El client
+     * també el respon sense encuar-lo; t0 es marca just abans d'enviar-lo.
+     */
+    private void pingAll() {
+        for (WebSocket conn : clients.snapshot().keySet()) {
+            ClockEstimator clock = clients.clock(conn);
+            if (clock == null) continue;
+            JSONObject ping = msg(T_PING);
+            if (clock.isKnown()) ping.put(K_OFFSET, clock.offsetMs()).put(K_RTT, clock.rttMs());
+            try {
+                conn.send(ping.put(K_T0, System.currentTimeMillis()).toString());
+            } catch (WebsocketNotConnectedException e) {
+                String name = clients.cleanupDisconnected(conn);
+                System.out.println("Client desconnectat durant ping: " + name);
+            }
+        }
+    }
+
+    /**
+     * Envia una imatge a tots els clients: binari als que l'entenen, JSON+Base64 a la resta.
+     * Els clients binaris reben la versió del seu perfil ({@link ImageVariants}): el frame RGB888
+     * ja ajustat al seu panell (/prerender on, o si l'han demanat), o el fitxer reduït a la
+     * mida del seu panell. Cada versió es codifica i s'emmarca com a molt una vegada.
+     */
+    private void broadcastImage(ImageLoadResult img, int ttlMs) {
+        ImageVariants binary = new ImageVariants(img.displayName, img.data, ttlMs, prerender, panel);
+        SharedFrame json = null;
+        for (WebSocket conn : clients.snapshot().keySet()) {
+            if (clients.supportsBinary(conn)) {
+                sendSafe(conn, ClientOutbox.Kind.IMAGE, binary.forClient(clients.profile(conn)));
+            } else {
+                if (json == null) {
+                    json = SharedFrame.text(msg(T_IMAGE)
+                            .put(K_NAME, img.displayName)
+                            .put(K_B64, Base64.getEncoder().encodeToString(img.data))
+                            .put(K_TTL, ttlMs)
+                            .toString());
+                }
+                sendSafe(conn, ClientOutbox.Kind.IMAGE, json);
+            }
+        }
+    }
+
+    /**
+     * Envia la llista de clients: una única trama compartida per a tothom i, si n'hi ha,
+     * un missatge propi al client nou amb el seu identificador.
+     *
+     * @param newcomer client que s'acaba de connectar (o null)
+     */
+    private void sendClientsListToAll(WebSocket newcomer) {
         JSONArray list = clients.currentNames();
+        SharedFrame shared = SharedFrame.text(msg(T_CLIENTS).put("list", list).toString());
         for (Map.Entry<WebSocket, String> e : clients.snapshot().entrySet()) {
-            JSONObject rst = msg(T_CLIENTS)
-                    .put("id", e.getValue())
-                    .put("list", list);
-            sendSafe(e.getKey(), rst.toString());
+            WebSocket conn = e.getKey();
+            if (conn == newcomer) {
+                // Tipus propi: la llista compartida d'una altra connexió no l'ha de substituir
+                sendSafe(conn, ClientOutbox.Kind.WELCOME, SharedFrame.text(msg(T_CLIENTS)
+                        .put("id", e.getValue())
+                        .put("list", list)
+                        .toString()));
+            } else {
+                sendSafe(conn, ClientOutbox.Kind.CONTROL, shared);
+            }
         }
     }
 
@@ -135,20 +417,46 @@ public class Main extends WebSocketServer {
     @Override
     public void onOpen(WebSocket conn, ClientHandshake handshake) {
         String name = clients.add(conn);
-        System.out.println("Client connectat: " + name);
-        sendClientsListToAll();
+        boolean binary = BinaryMessage.HANDSHAKE_VERSION.equals(handshake.getFieldValue(BinaryMessage.HANDSHAKE_HEADER));
+        clients.setBinary(conn, binary);
+        VideoWall.Tile tile = VideoWall.Tile.parse(handshake.getFieldValue(VideoWall.TILE_HEADER));
+        clients.setTile(conn, tile);
+        ClientCapabilities caps = ClientCapabilities.fromHeaders(handshake::getFieldValue);
+        clients.setProfile(conn, new ClientProfile(caps));
+        System.out.println("Client connectat: " + name + (binary ? " (binari)" : "") + (tile != null ? " tile " + tile : "")
+                + (caps.equals(ClientCapabilities.UNKNOWN) ? "" : " perfil " + caps));
+        sendClientsListToAll(conn);
     }
 
     @Override
     public void onClose(WebSocket conn, int code, String reason, boolean remote) {
         String name = clients.remove(conn);
         System.out.println("Client desconnectat: " + name);
-        sendClientsListToAll();
+        sendClientsListToAll(null);
     }
 
     @Override
     public void onMessage(WebSocket conn, String message) {
-        // Broadcast-only: ignore
+        // Dels clients només s'escolten els pongs de rellotge i els informes periòdics
+        long t2 = System.currentTimeMillis();
+        try {
+            JSONObject o = new JSONObject(message);
+            String type = o.optString(K_TYPE);
+            if (T_PONG.equals(type)) {
+                ClockEstimator clock = clients.clock(conn);
+                if (clock != null) clock.sample(o.getLong(K_T0), o.getLong(K_T1), t2);
+            } else if (ClientTelemetry.TYPE.equals(type)) {
+                ClientTelemetry report = ClientTelemetry.parse(o, t2);
+                clients.setTelemetry(conn, report);
+                // El perfil aprèn dels informes: un panell sobrecarregat rep menys frames del flux
+                ClientProfile profile = clients.profile(conn);
+                if (profile != null && profile.learn(report, streamer.current() != null)) {
+                    System.out.println("Perfil de " + clients.nameBySocket(conn) + ": " + profile.describe(streamer.fps()));
+                }
+            }
+        } catch (Exception ignored) {
+            // missatge desconegut: s'ignora
+        }
     }
 
     @Override
@@ -160,6 +468,9 @@ public class Main extends WebSocketServer {
     public void onStart() {
         System.out.println("Servidor WebSocket engegat al port: " + getPort());
         setConnectionLostTimeout(100);
+        pumper.scheduleWithFixedDelay(this::pumpAll, PUMP_PERIOD_MS, PUMP_PERIOD_MS, TimeUnit.MILLISECONDS);
+        pumper.scheduleAtFixedRate(this::pingAll, 0L, CLOCK_PING_MS, TimeUnit.MILLISECONDS);
+        metrics = MetricsEndpoint.fromSystemProperties(this::metricsText);
         // Mostra la mateixa ajuda que /help
         System.out.println(HELP_TEXT);
         Thread repl = new Thread(this::replWithHistory, "stdin-broadcast-loop");
@@ -177,8 +488,6 @@ public class Main extends WebSocketServer {
                     .parser(parser)
                     .build();
 
-            final int TTL_MS = 5000;
-
             while (true) {
                 String line;
                 try {
@@ -197,67 +506,364 @@ public class Main extends WebSocketServer {
                 line = line.trim();
                 if (line.isEmpty()) continue;
 
-                if (line.equalsIgnoreCase("/quit")) {
-                    System.out.println("Aturant servidor…");
-                    safeStopServer();
-                    quitLatch.countDown();
-                    break;
-                }
+                if (!handleCommand(line)) break;
+            }
+        } catch (Exception e) {
+            System.out.println("stdin loop ended: " + e.getMessage());
+        }
+    }
 
-                if (line.equalsIgnoreCase("/help")) {
-                    System.out.println(HELP_TEXT);
-                    continue;
+    /**
+     * Llegeix les opcions de rètol (i --ttl) que precedeixen el missatge de /text. Per defecte
+     * el rètol fa una passada sencera: amb un TTL fix, un missatge llarg quedaria tallat.
+     *
+     * @param args el que segueix a "/text "
+     * @return missatge "text" (sense opcions) o "marquee", o null si falta el text o una opció és invàlida
+     */
+    private static JSONObject parseText(String args) {
+        boolean marquee = false, leftwards = true, blend = true;
+        double speed = 30.0;
+        int loops = 1;
+        int ttlMs = TTL_MS;
+
+        String rest = args;
+        while (rest.startsWith("--")) {
+            int sp = rest.indexOf(' ');
+            String opt = (sp < 0) ? rest : rest.substring(0, sp);
+            rest = (sp < 0) ? "" : rest.substring(sp + 1).trim();
+
+            int eq = opt.indexOf('=');
+            String key = (eq < 0) ? opt : opt.substring(0, eq);
+            String val = (eq < 0) ? "" : opt.substring(eq + 1).toLowerCase(Locale.ROOT);
+            try {
+                switch (key) {
+                    case "--marquee" -> { if (eq >= 0) return null; }
+                    case "--speed" -> {
+                        speed = Double.parseDouble(val);
+                        if (!(speed > 0)) return null;
+                    }
+                    case "--dir" -> {
+                        if (!val.equals("left") && !val.equals("right")) return null;
+                        leftwards = val.equals("left");
+                    }
+                    case "--loops" -> {
+                        loops = Integer.parseInt(val);
+                        if (loops < 0) return null;
+                    }
+                    case "--blend" -> {
+                        if (!val.equals("on") && !val.equals("off")) return null;
+                        blend = val.equals("on");
+                    }
+                    case "--ttl" -> {
+                        ttlMs = Integer.parseInt(val);
+                        if (ttlMs <= 0) return null;
+                        continue; // no activa el rètol
+                    }
+                    default -> { return null; }
                 }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            marquee = true;
+        }
+        if (rest.isEmpty()) return null;
+
+        JSONObject payload = msg(marquee ? T_MARQUEE : T_TEXT)
+                .put(K_MESSAGE, rest)
+                .put(K_TTL, ttlMs);
+        if (marquee) {
+            payload.put(K_SPEED, speed)
+                    .put(K_DIR, leftwards ? "left" : "right")
+                    .put(K_LOOPS, loops)
+                    .put(K_BLEND, blend);
+        }
+        return payload;
+    }
 
-                if (line.equalsIgnoreCase("/list")) {
-                    System.out.println("Connectats: " + clients.currentNames());
-                    continue;
+    /**
+     * Executa una ordre de consola.
+     *
+     * @param line línia ja retallada i no buida
+     * @return false si el servidor s'ha aturat (/quit)
+     */
+    private boolean handleCommand(String line) {
+        if (line.equalsIgnoreCase("/quit")) {
+            System.out.println("Aturant servidor…");
+            safeStopServer();
+            quitLatch.countDown();
+            return false;
+        }
+
+        if (line.equalsIgnoreCase("/help")) {
+            System.out.println(HELP_TEXT);
+            return true;
+        }
+
+        if (line.equalsIgnoreCase("/list")) {
+            System.out.println("Connectats: " + clients.currentNames());
+            return true;
+        }
+
+        if (line.equalsIgnoreCase("/queues")) {
+            Map<WebSocket, String> snap = clients.snapshot();
+            if (snap.isEmpty()) System.out.println("Cap client connectat.");
+            for (Map.Entry<WebSocket, String> e : snap.entrySet()) {
+                ClientOutbox outbox = clients.outbox(e.getKey());
+                if (outbox != null) System.out.println(e.getValue() + ": " + outbox.stats(e.getKey()));
+            }
+            return true;
+        }
+
+        if (line.equalsIgnoreCase("/stats")) {
+            printStats();
+            return true;
+        }
+
+        if (line.startsWith("/text ")) {
+            JSONObject payload = parseText(line.substring(6).trim());
+            if (payload == null) {
+                System.out.println("Ús: /text [--marquee] [--speed=px/s] [--dir=left|right] [--loops=N] [--blend=on|off] [--ttl=ms] <missatge>");
+                return true;
+            }
+            broadcastAll(payload.toString());
+            return true;
+        }
+
+        if (line.startsWith("/image ")) {
+            String spec = line.substring(7).trim();
+            if (spec.isEmpty()) {
+                System.out.println("Ús: /image <spec>  (exemple: /image classpath:ietilogo.png)");
+                return true;
+            }
+            try {
+                ImageLoadResult img = loadImage(spec);
+                if (img == null) {
+                    System.out.println("No s'ha pogut carregar (o extensió no permesa): " + spec);
+                    return true;
                 }
+                broadcastImage(img, TTL_MS);
+            } catch (Exception e) {
+                System.out.println("Error llegint imatge: " + e.getMessage());
+            }
+            return true;
+        }
 
-                if (line.startsWith("/text ")) {
-                    String text = line.substring(6).trim();
-                    if (text.isEmpty()) {
-                        System.out.println("Ús: /text <missatge>");
-                        continue;
-                    }
-                    JSONObject payload = msg(T_TEXT)
-                            .put(K_MESSAGE, text)
-                            .put(K_TTL, TTL_MS);
-                    broadcastAll(payload.toString());
-                    continue;
+        if (line.equalsIgnoreCase("/prerender") || line.startsWith("/prerender ")) {
+            String arg = line.substring("/prerender".length()).trim().toLowerCase(Locale.ROOT);
+            if (arg.equals("on")) prerender = true;
+            else if (arg.equals("off")) prerender = false;
+            else if (!arg.isEmpty()) {
+                System.out.println("Ús: /prerender [on|off]");
+                return true;
+            }
+            System.out.println("Pre-render: " + (prerender ? "on" : "off") + " (" + panel + ")");
+            return true;
+        }
+
+        if (line.equalsIgnoreCase("/stream") || line.startsWith("/stream ")) {
+            String arg = line.substring("/stream".length()).trim();
+            if (arg.isEmpty()) {
+                String cur = streamer.current();
+                System.out.println(cur == null ? "Cap flux actiu." : "Flux: " + cur);
+                return true;
+            }
+            if (arg.equalsIgnoreCase("stop")) {
+                streamer.stop();
+                System.out.println("Flux aturat.");
+                return true;
+            }
+            // L'últim mot, si és un número, són els fps (el path pot tenir espais)
+            int fps = STREAM_FPS;
+            int sp = arg.lastIndexOf(' ');
+            if (sp > 0 && arg.substring(sp + 1).matches("\\d{1,4}")) {
+                fps = Integer.parseInt(arg.substring(sp + 1));
+                arg = arg.substring(0, sp).trim();
+            }
+            if (fps <= 0 || fps > 240) {
+                System.out.println("Ús: /stream <fitxer-o-directori> [fps 1..240] | /stream stop");
+                return true;
+            }
+            try {
+                streamer.start(arg, fps, panel, wall);
+                System.out.println("Flux: " + streamer.current());
+            } catch (IOException e) {
+                System.out.println("No s'ha pogut iniciar el flux: " + e.getMessage());
+            }
+            return true;
+        }
+
+        if (line.equalsIgnoreCase("/wall") || line.startsWith("/wall ")) {
+            String arg = line.substring("/wall".length()).trim();
+            if (arg.equalsIgnoreCase("off")) {
+                wall = VideoWall.SINGLE;
+            } else if (!arg.isEmpty()) {
+                VideoWall w = VideoWall.parse(arg);
+                if (w == null) {
+                    System.out.println("Ús: /wall [<columnes>x<files>|off]");
+                    return true;
                 }
+                wall = w;
+            }
+            printWall();
+            return true;
+        }
 
-                if (line.startsWith("/image ")) {
-                    String spec = line.substring(7).trim();
-                    if (spec.isEmpty()) {
-                        System.out.println("Ús: /image <spec>  (exemple: /image classpath:ietilogo.png)");
-                        continue;
-                    }
-                    try {
-                        ImageLoadResult img = loadImageBase64(spec);
-                        if (img == null) {
-                            System.out.println("No s'ha pogut carregar (o extensió no permesa): " + spec);
-                            continue;
-                        }
-                        JSONObject payload = msg(T_IMAGE)
-                                .put(K_NAME, img.displayName)
-                                .put(K_B64, img.base64)
-                                .put(K_TTL, 5000);
-                        broadcastAll(payload.toString());
-                    } catch (Exception e) {
-                        System.out.println("Error llegint imatge: " + e.getMessage());
-                    }
-                    continue;
+        if (line.startsWith("/brightness ")) {
+            String arg = line.substring("/brightness".length()).trim();
+            if (!arg.matches("\\d{1,3}") || Integer.parseInt(arg) > 255) {
+                System.out.println("Ús: /brightness <0..255>");
+                return true;
+            }
+            SharedFrame frame = SharedFrame.text(msg(T_BRIGHTNESS).put(K_VALUE, Integer.parseInt(arg)).toString());
+            for (WebSocket conn : clients.snapshot().keySet()) {
+                sendSafe(conn, ClientOutbox.Kind.SETTING, frame);
+            }
+            System.out.println("Brillantor: " + arg);
+            return true;
+        }
+
+        if (line.equalsIgnoreCase("/panel") || line.startsWith("/panel ")) {
+            String arg = line.substring("/panel".length()).trim();
+            if (!arg.isEmpty()) {
+                PanelGeometry g = PanelGeometry.parse(arg);
+                if (g == null) {
+                    System.out.println("Ús: /panel <amplada>x<alçada> [cover|contain|stretch|center|tile|none] [brillantor]");
+                    return true;
                 }
+                panel = g;
+            }
+            System.out.println("Panell: " + panel);
+            return true;
+        }
+
+        System.out.println("Ordre desconeguda. Escriu /help per veure l'ajuda.");
+        return true;
+    }
 
-                System.out.println("Ordre desconeguda. Escriu /help per veure l'ajuda.");
+    /** Taula de rendiment dels panells: l'últim informe de cada client i l'estat de la seva cua. */
+    private void printStats() {
+        Map<WebSocket, String> snap = clients.snapshot();
+        if (snap.isEmpty()) {
+            System.out.println("Cap client connectat.");
+            return;
+        }
+        long now = System.currentTimeMillis();
+        System.out.println(String.format(Locale.ROOT, "%-8s %s", "client", ClientTelemetry.header()));
+        int overloaded = 0;
+        List<Map.Entry<WebSocket, String>> rows = new ArrayList<>(snap.entrySet());
+        rows.sort(Map.Entry.comparingByValue());
+        for (Map.Entry<WebSocket, String> e : rows) {
+            ClientTelemetry t = clients.telemetry(e.getKey());
+            ClientOutbox outbox = clients.outbox(e.getKey());
+            String queue = outbox == null ? "" : "  [sortida: " + outbox.depth() + " pendents, " + outbox.lagMs() + "ms]";
+            if (t == null) {
+                System.out.println(String.format(Locale.ROOT, "%-8s %s", e.getValue(), "(sense informes)") + queue);
+                continue;
             }
-        } catch (Exception e) {
-            System.out.println("stdin loop ended: " + e.getMessage());
+            if (t.overloaded()) overloaded++;
+            System.out.println(String.format(Locale.ROOT, "%-8s %s", e.getValue(), t.row(now)) + queue);
+        }
+        int fps = streamer.fps();
+        for (Map.Entry<WebSocket, String> e : rows) {
+            ClientProfile profile = clients.profile(e.getKey());
+            if (profile != null) System.out.println("  perfil " + e.getValue() + ": " + profile.describe(fps));
+        }
+        if (overloaded > 0) System.out.println(overloaded + " panell(s) no donen l'abast.");
+    }
+
+    /** Mostra el mur, quin client ocupa cada tile i la seva diferència de rellotge. */
+    private void printWall() {
+        VideoWall w = wall;
+        PanelGeometry canvas = w.canvas(panel);
+        System.out.println("Mur: " + (w.tiles() == 1 ? "off" : w + " (" + canvas.width() + "x" + canvas.height()
+                + ", tile " + panel.width() + "x" + panel.height() + ")") + ". S'aplica al /stream següent.");
+        boolean[] covered = new boolean[w.tiles()];
+        for (Map.Entry<WebSocket, String> e : clients.snapshot().entrySet()) {
+            VideoWall.Tile tile = clients.tile(e.getKey());
+            int idx = w.indexOf(tile);
+            if (idx >= 0) covered[idx] = true;
+            System.out.println("  " + e.getValue() + ": tile " + (tile == null ? "-" : tile)
+                    + (idx < 0 ? " (fora del mur)" : "") + " " + clients.clock(e.getKey()));
+        }
+        for (int i = 0; i < covered.length; i++) {
+            if (!covered[i]) System.out.println("  tile " + (i % w.cols()) + "," + (i / w.cols()) + ": cap client");
+        }
+    }
+
+    /** Mètriques en format Prometheus (fil de l'endpoint HTTP). */
+    private String metricsText() {
+        Map<WebSocket, String> snap = clients.snapshot();
+        List<String> names = new ArrayList<>();
+        List<ClientOutbox.Snapshot> queues = new ArrayList<>();
+        List<ClockEstimator> clocks = new ArrayList<>();
+        List<ClientTelemetry> reports = new ArrayList<>();
+        int binary = 0;
+        for (Map.Entry<WebSocket, String> e : snap.entrySet()) {
+            ClientOutbox outbox = clients.outbox(e.getKey());
+            ClockEstimator clock = clients.clock(e.getKey());
+            if (outbox == null || clock == null) continue; // s'acaba de desconnectar
+            names.add(e.getValue());
+            queues.add(outbox.snapshot(e.getKey()));
+            clocks.add(clock);
+            reports.add(clients.telemetry(e.getKey()));
+            if (clients.supportsBinary(e.getKey())) binary++;
+        }
+
+        PromText p = new PromText()
+                .gauge("matrixplay_server_clients", "Clients connectats.", names.size())
+                .gauge("matrixplay_server_binary_clients", "Clients connectats que entenen missatges binaris.", binary)
+                .counter("matrixplay_server_sent_bytes_total", "Bytes de payload enviats a tots els clients.",
+                        clients.sentBytesTotal())
+                .gauge("matrixplay_server_stream_active", "1 si hi ha un /stream actiu.", streamer.current() != null ? 1 : 0);
+
+        perClient(p, "matrixplay_server_client_queue_depth", "gauge", "Missatges pendents a la cua de sortida.",
+                names, i -> queues.get(i).depth());
+        perClient(p, "matrixplay_server_client_queue_bytes", "gauge", "Bytes pendents a la cua de sortida.",
+                names, i -> queues.get(i).pendingBytes());
+        perClient(p, "matrixplay_server_client_inflight_bytes", "gauge", "Bytes passats al socket encara no escrits.",
+                names, i -> queues.get(i).inFlightBytes());
+        perClient(p, "matrixplay_server_client_lag_seconds", "gauge", "Temps sense poder enviar res amb missatges pendents.",
+                names, i -> queues.get(i).lagMs() / 1e3);
+        p.family("matrixplay_server_client_send_latency_seconds", "summary", "Temps a la cua de sortida dels missatges enviats.");
+        for (int i = 0; i < names.size(); i++) {
+            p.sample("matrixplay_server_client_send_latency_seconds_sum", queues.get(i).latencySumNs() / 1e9, "client", names.get(i));
+            p.sample("matrixplay_server_client_send_latency_seconds_count", queues.get(i).sent(), "client", names.get(i));
+        }
+        perClient(p, "matrixplay_server_client_send_latency_max_seconds", "gauge",
+                "Temps màxim a la cua de sortida d'un missatge enviat.", names, i -> queues.get(i).latencyMaxNs() / 1e9);
+        perClient(p, "matrixplay_server_client_sent_bytes_total", "counter", "Bytes de payload enviats al client.",
+                names, i -> queues.get(i).sentBytes());
+        perClient(p, "matrixplay_server_client_dropped_messages_total", "counter", "Missatges descartats per cua plena.",
+                names, i -> queues.get(i).dropped());
+        perClient(p, "matrixplay_server_client_coalesced_messages_total", "counter",
+                "Missatges substituïts per un de més nou abans d'enviar-los.", names, i -> queues.get(i).coalesced());
+        perClient(p, "matrixplay_server_client_clock_rtt_seconds", "gauge", "Temps d'anada i tornada del ping de rellotge.",
+                names, i -> clocks.get(i).isKnown() ? clocks.get(i).rttMs() / 1e3 : Double.NaN);
+        perClient(p, "matrixplay_server_client_reported_fps", "gauge", "FPS del panell segons el seu últim informe.",
+                names, i -> reports.get(i) == null ? Double.NaN : reports.get(i).fps());
+        perClient(p, "matrixplay_server_client_reported_p99_seconds", "gauge",
+                "p99 del temps de frame segons l'últim informe del client.",
+                names, i -> reports.get(i) == null ? Double.NaN : reports.get(i).p99Ms() / 1e3);
+        perClient(p, "matrixplay_server_client_overloaded", "gauge", "1 si l'últim informe del client indica sobrecàrrega.",
+                names, i -> reports.get(i) == null ? Double.NaN : (reports.get(i).overloaded() ? 1 : 0));
+        return p.toString();
+    }
+
+    /** Una família amb una mostra per client (etiqueta {@code client}); els valors NaN s'ometen. */
+    private static void perClient(PromText p, String name, String type, String help, List<String> names,
+                                  IntToDoubleFunction value) {
+        p.family(name, type, help);
+        for (int i = 0; i < names.size(); i++) {
+            double v = value.applyAsDouble(i);
+            if (!Double.isNaN(v)) p.sample(name, v, "client", names.get(i));
         }
     }
 
     private void safeStopServer() {
+        streamer.shutdown();
+        MetricsEndpoint m = metrics;
+        if (m != null) m.close();
+        pumper.shutdownNow();
         try {
             // 1s de timeout per tancar netament
             stop(1000);
@@ -272,12 +878,12 @@ public class Main extends WebSocketServer {
     // ───────────────────────────── Helpers d’imatge ─────────────────────────────
     private static class ImageLoadResult {
         final String displayName;
-        final String base64;
-        ImageLoadResult(String name, String b64) { this.displayName = name; this.base64 = b64; }
+        final byte[] data;
+        ImageLoadResult(String name, byte[] data) { this.displayName = name; this.data = data; }
     }
 
-    /** Retorna Base64 d'una imatge (PNG/JPG/JPEG) via path o classpath:. No accepta .b64 */
-    private static ImageLoadResult loadImageBase64(String spec) throws Exception {
+    /** Retorna els bytes d'una imatge (PNG/JPG/JPEG) o animació (GIF/APNG) via path o classpath:. No accepta .b64 */
+    private static ImageLoadResult loadImage(String spec) throws Exception {
         String lower = spec.toLowerCase(Locale.ROOT);
         if (lower.startsWith("classpath:")) {
             String resPath = spec.substring("classpath:".length());
@@ -287,9 +893,8 @@ public class Main extends WebSocketServer {
             try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(resPath)) {
                 if (is == null) return null;
                 byte[] data = is.readAllBytes();
-                String b64 = Base64.getEncoder().encodeToString(data);
                 String name = deriveDisplayName(resPath);
-                return new ImageLoadResult(name, b64);
+                return new ImageLoadResult(name, data);
             }
         } else {
             File f = new File(spec);
@@ -297,9 +902,8 @@ public class Main extends WebSocketServer {
             if (!isAllowedExt(f.getName())) return null;
 
             byte[] data = Files.readAllBytes(f.toPath());
-            String b64 = Base64.getEncoder().encodeToString(data);
             String name = f.getName();
-            return new ImageLoadResult(name, b64);
+            return new ImageLoadResult(name, data);
         }
     }
 
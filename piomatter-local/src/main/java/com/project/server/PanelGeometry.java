@@ -0,0 +1,71 @@
+package com.project.server;
+
+import com.piomatter.UtilsImage;
+import com.piomatter.UtilsImage.FitMode;
+import com.piomatter.UtilsRGB888;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Geometria del panell destí per al pre-render al servidor.
+ *
+ * @param width      amplada en píxels
+ * @param height     alçada en píxels
+ * @param fit        mode d'ajust de la imatge
+ * @param brightness brillantor 0..255 aplicada als píxels (normalment 255: cada client aplica
+ *                   la seva al backend, i el servidor la canvia amb /brightness)
+ */
+record PanelGeometry(int width, int height, FitMode fit, int brightness) {
+
+    /** Panell per defecte dels clients: 64x64, CONTAIN, sense atenuar (escala completa). */
+    static final PanelGeometry DEFAULT = new PanelGeometry(64, 64, FitMode.CONTAIN, 255);
+
+    /**
+     * Interpreta {@code <amplada>x<alçada> [fit] [brillantor]}, p.ex. {@code 128x64 cover 180}.
+     *
+     * @param spec text de l'ordre
+     * @return la geometria, o null si el format no és vàlid
+     */
+    static PanelGeometry parse(String spec) {
+        String[] parts = spec.trim().split("\\s+");
+        if (parts.length == 0 || parts.length > 3) return null;
+        try {
+            String[] wh = parts[0].toLowerCase(Locale.ROOT).split("x");
+            if (wh.length != 2) return null;
+            int w = Integer.parseInt(wh[0]);
+            int h = Integer.parseInt(wh[1]);
+            if (w <= 0 || h <= 0 || w > 4096 || h > 4096) return null;
+            FitMode fit = DEFAULT.fit;
+            int brightness = DEFAULT.brightness;
+            if (parts.length > 1) fit = FitMode.valueOf(parts[1].toUpperCase(Locale.ROOT));
+            if (parts.length > 2) brightness = Math.max(0, Math.min(255, Integer.parseInt(parts[2])));
+            return new PanelGeometry(w, h, fit, brightness);
+        } catch (IllegalArgumentException e) {
+            return null; // NumberFormatException inclosa
+        }
+    }
+
+    /**
+     * Ajusta una imatge al panell i hi aplica la brillantor: el resultat és el contingut
+     * exacte del framebuffer del client.
+     *
+     * @param src imatge ja descodificada
+     * @return píxels RGB888 ({@code width * height * 3})
+     */
+    byte[] renderRGB888(BufferedImage src) {
+        BufferedImage fitted = UtilsImage.fitToSize(src, width, height, fit);
+        byte[] rgb = new byte[width * height * 3];
+        UtilsRGB888.copy(fitted, ByteBuffer.wrap(rgb), width * 3, width, height, brightness);
+        return rgb;
+    }
+
+    /** @return bytes d'un frame RGB888 d'aquesta geometria */
+    int frameBytes() { return width * height * 3; }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + " " + fit.name().toLowerCase(Locale.ROOT) + " brillantor=" + brightness;
+    }
+}
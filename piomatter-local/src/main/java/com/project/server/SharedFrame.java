@@ -0,0 +1,65 @@
+package com.project.server;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.BinaryFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.TextFrame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Missatge serialitzat una sola vegada per a tots els clients.
+ *
+ * El payload (UTF-8 del JSON o bytes binaris) es calcula un cop i es comparteix només
+ * lectura: la serialització del JSON, el render de la imatge o la codificació del frame no
+ * es repeteixen per client. Cada enviament passa per l'API pública de Java-WebSocket
+ * ({@link WebSocket#sendFrame}), que emmarca i encua sota el seu propi bloqueig i comprova
+ * que el socket encara estigui obert; la Framedata és nova a cada enviament (una vista dels
+ * mateixos bytes) perquè el Draft mou la posició del payload mentre l'emmarca, i els
+ * enviaments arriben des de diversos fils.
+ */
+final class SharedFrame {
+
+    private final boolean text;
+    private final ByteBuffer payload;   // només lectura, posició 0
+
+    private SharedFrame(boolean text, ByteBuffer payload) {
+        this.text = text;
+        this.payload = payload.asReadOnlyBuffer();
+    }
+
+    /** @return trama de text amb el payload UTF-8 de {@code message} */
+    static SharedFrame text(String message) {
+        return new SharedFrame(true, ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** @return trama binària amb els bytes restants de {@code data} (no es copien) */
+    static SharedFrame binary(ByteBuffer data) {
+        return new SharedFrame(false, data.slice());
+    }
+
+    /** @return mida del payload en bytes */
+    int payloadBytes() {
+        return payload.remaining();
+    }
+
+    /**
+     * Envia la trama al socket.
+     *
+     * @param conn socket destí
+     * @throws WebsocketNotConnectedException si el socket ja no està obert
+     */
+    void sendTo(WebSocket conn) {
+        conn.sendFrame(newFrame());
+    }
+
+    /** Nova Framedata sobre els mateixos bytes (createBinaryFrame mou la posició del payload). */
+    private DataFrame newFrame() {
+        DataFrame f = text ? new TextFrame() : new BinaryFrame();
+        f.setPayload(payload.duplicate());
+        f.setTransferemasked(false);
+        return f;
+    }
+}
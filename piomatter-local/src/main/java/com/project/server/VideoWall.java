@@ -0,0 +1,109 @@
+package com.project.server;
+
+import java.util.Locale;
+
+/**
+ * Mur de vídeo: un llenç gran repartit entre diversos clients, un tros (tile) per client.
+ *
+ * Cada tile té la geometria del panell (/panel) i el llenç en fa {@code cols x rows}. Els
+ * clients indiquen la seva posició al handshake ({@link #TILE_HEADER}); un mur d'1x1 és el
+ * cas normal, en què tots els clients reben el mateix.
+ *
+ * @param cols tiles per fila
+ * @param rows files de tiles
+ */
+record VideoWall(int cols, int rows) {
+
+    /** Capçalera del handshake amb la posició del client dins del mur: {@code <columna>,<fila>}. */
+    static final String TILE_HEADER = "X-MatrixPlay-Tile";
+
+    /** Sense mur: un sol tile que reben tots els clients. */
+    static final VideoWall SINGLE = new VideoWall(1, 1);
+
+    /**
+     * Posició d'un client dins del mur.
+     *
+     * @param col columna (0 = esquerra)
+     * @param row fila (0 = dalt)
+     */
+    record Tile(int col, int row) {
+
+        /**
+         * @param spec {@code <columna>,<fila>}, p.ex. {@code 1,0}
+         * @return la posició, o null si no n'hi ha o no és vàlida
+         */
+        static Tile parse(String spec) {
+            if (spec == null) return null;
+            String[] p = spec.trim().split("\\s*,\\s*");
+            if (p.length != 2) return null;
+            try {
+                int col = Integer.parseInt(p[0]), row = Integer.parseInt(p[1]);
+                return (col < 0 || row < 0) ? null : new Tile(col, row);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() { return col + "," + row; }
+    }
+
+    /**
+     * Interpreta {@code <columnes>x<files>}, p.ex. {@code 3x2}.
+     *
+     * @param spec text de l'ordre
+     * @return el mur, o null si el format no és vàlid
+     */
+    static VideoWall parse(String spec) {
+        String[] p = spec.trim().toLowerCase(Locale.ROOT).split("x");
+        if (p.length != 2) return null;
+        try {
+            int cols = Integer.parseInt(p[0].trim()), rows = Integer.parseInt(p[1].trim());
+            if (cols <= 0 || rows <= 0 || cols > 64 || rows > 64) return null;
+            return new VideoWall(cols, rows);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** @return nombre de tiles */
+    int tiles() { return cols * rows; }
+
+    /**
+     * @param tile posició d'un client (pot ser null)
+     * @return índex del tile que li toca, o -1 si no en té cap dins del mur
+     */
+    int indexOf(Tile tile) {
+        if (tiles() == 1) return 0;
+        if (tile == null || tile.col() >= cols || tile.row() >= rows) return -1;
+        return tile.row() * cols + tile.col();
+    }
+
+    /** @return geometria del llenç sencer (el tile és {@code g}) */
+    PanelGeometry canvas(PanelGeometry g) {
+        return new PanelGeometry(g.width() * cols, g.height() * rows, g.fit(), g.brightness());
+    }
+
+    /**
+     * Retalla el tile {@code index} d'un frame del llenç.
+     *
+     * @param canvas frame RGB888 del llenç ({@link #canvas})
+     * @param g      geometria d'un tile
+     * @param index  tile ({@code fila * cols + columna})
+     * @return frame RGB888 del tile
+     */
+    byte[] slice(byte[] canvas, PanelGeometry g, int index) {
+        int rowBytes = g.width() * 3;
+        int canvasRowBytes = rowBytes * cols;
+        int x0 = (index % cols) * rowBytes;
+        int y0 = (index / cols) * g.height();
+        byte[] out = new byte[g.frameBytes()];
+        for (int y = 0; y < g.height(); y++) {
+            System.arraycopy(canvas, (y0 + y) * canvasRowBytes + x0, out, y * rowBytes, rowBytes);
+        }
+        return out;
+    }
+
+    @Override
+    public String toString() { return cols + "x" + rows; }
+}